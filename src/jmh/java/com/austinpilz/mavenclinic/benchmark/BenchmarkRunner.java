@@ -0,0 +1,72 @@
+package com.austinpilz.mavenclinic.benchmark;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entry point for the JMH benchmarks. It accepts the regular JMH command line (benchmark regex, -p parameters, -f, -wi,
+ * etc.) plus a {@code --threads=1,4,16} option, and runs the selected benchmarks once per thread count.
+ *
+ * Unless overridden on the command line, every run reports both throughput and average time and always attaches the GC
+ * profiler so allocation rate (gc.alloc.rate.norm) is part of every result. Each thread count writes its own JSON result
+ * file under target/ so runs of different store implementations can be compared side by side.
+ *
+ * Usage: {@code mvn -Pbenchmark test-compile exec:exec -Dbenchmark.args="UserAppointmentManager --threads=1,8"}
+ *
+ * @author Austin Pilz
+ */
+public class BenchmarkRunner {
+
+    private static final String THREADS_OPTION = "--threads=";
+
+    public static void main(String[] args) throws Exception {
+
+        List<String> jmhArgs = new ArrayList<>();
+        List<Integer> threadCounts = new ArrayList<>();
+
+        // Pull out our own thread option, everything else is handed to JMH untouched.
+        for (String arg : args) {
+            if (arg.startsWith(THREADS_OPTION)) {
+                for (String count : arg.substring(THREADS_OPTION.length()).split(",")) {
+                    threadCounts.add(Integer.parseInt(count.trim()));
+                }
+            } else {
+                jmhArgs.add(arg);
+            }
+        }
+
+        if (threadCounts.isEmpty()) {
+            threadCounts.add(1);
+        }
+
+        CommandLineOptions commandLine = new CommandLineOptions(jmhArgs.toArray(new String[0]));
+
+        for (int threads : threadCounts) {
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                    .parent(commandLine)
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("target/jmh-result-" + threads + "-threads.json");
+
+            if (commandLine.getBenchModes().isEmpty()) {
+                options.mode(Mode.Throughput).mode(Mode.AverageTime);
+            }
+
+            if (!commandLine.getTimeUnit().hasValue()) {
+                options.timeUnit(TimeUnit.MICROSECONDS);
+            }
+
+            new Runner(options.build()).run();
+        }
+    }
+}
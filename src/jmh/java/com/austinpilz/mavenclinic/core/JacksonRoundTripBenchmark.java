@@ -0,0 +1,109 @@
+package com.austinpilz.mavenclinic.core;
+
+import com.austinpilz.mavenclinic.server.WireFormatConfiguration;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmarks the Jackson round trip of the payloads on our two endpoints: the {@link ScheduleAppointmentRequest} body of
+ * POST /appointments and the {@link MavenAppointment} list returned by GET /users/{userId}/appointments.
+ *
+ * {@code format} picks the wire format: {@code json} uses an object mapper configured the way Spring Boot configures it
+ * for the controllers (java.time support with ISO strings instead of timestamps), {@code smile} the Smile mapper the
+ * controllers use for application/x-jackson-smile (see {@link WireFormatConfiguration}). The size of each payload in the
+ * format is printed when the trial starts, since it is what the format is for and JMH has no column for it.
+ *
+ * @author Austin Pilz
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class JacksonRoundTripBenchmark {
+
+    private static final TypeReference<List<MavenAppointment>> APPOINTMENT_LIST = new TypeReference<List<MavenAppointment>>() {
+    };
+
+    @Param({"1", "50", "500"})
+    int appointmentsPerUser;
+
+    @Param({"json", "smile"})
+    String format;
+
+    ObjectMapper objectMapper;
+    ScheduleAppointmentRequest request;
+    byte[] requestBytes;
+    List<MavenAppointment> appointments;
+    byte[] appointmentsBytes;
+
+    @Setup
+    public void prepare() throws IOException {
+
+        objectMapper = format.equals("smile")
+                ? WireFormatConfiguration.smileObjectMapper(new Jackson2ObjectMapperBuilder())
+                : new ObjectMapper()
+                        .registerModule(new JavaTimeModule())
+                        .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+        request = ScheduleAppointmentRequest.builder()
+                .userId("benchmarkUser")
+                .appointmentTime(LocalDate.now().atTime(10, 30))
+                .build();
+        requestBytes = objectMapper.writeValueAsBytes(request);
+
+        appointments = new ArrayList<>();
+        for (int day = 0; day < appointmentsPerUser; day++) {
+            LocalDateTime start = LocalDate.now().plusDays(day).atTime(9, 0);
+            appointments.add(MavenAppointment.builder()
+                    .userId("benchmarkUser")
+                    .start(start)
+                    .end(start.plusMinutes(30))
+                    .build());
+        }
+        appointmentsBytes = objectMapper.writeValueAsBytes(appointments);
+
+        System.out.printf("%n%s payloads: request %d bytes, %d appointments %d bytes%n", format, requestBytes.length,
+                appointmentsPerUser, appointmentsBytes.length);
+    }
+
+    @Benchmark
+    public ScheduleAppointmentRequest readScheduleAppointmentRequest() throws IOException {
+
+        return objectMapper.readValue(requestBytes, ScheduleAppointmentRequest.class);
+    }
+
+    @Benchmark
+    public byte[] writeScheduleAppointmentRequest() throws IOException {
+
+        return objectMapper.writeValueAsBytes(request);
+    }
+
+    @Benchmark
+    public List<MavenAppointment> readAppointments() throws IOException {
+
+        return objectMapper.readValue(appointmentsBytes, APPOINTMENT_LIST);
+    }
+
+    @Benchmark
+    public byte[] writeAppointments() throws IOException {
+
+        return objectMapper.writeValueAsBytes(appointments);
+    }
+}
@@ -0,0 +1,178 @@
+package com.austinpilz.mavenclinic.manager;
+
+import com.austinpilz.mavenclinic.core.AvailableSlot;
+import com.austinpilz.mavenclinic.core.MavenAppointment;
+import com.austinpilz.mavenclinic.core.ScheduleAppointmentRequest;
+import com.austinpilz.mavenclinic.core.ScheduleAppointmentResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Benchmarks the per-user scheduling hot path, {@link UserAppointmentManager#scheduleAppointment} and the time validation
+ * it performs on every request.
+ *
+ * Each thread owns its own manager, pre-filled with {@code appointmentsPerUser} bookings, and a pre-generated stream of
+ * requests in which {@code acceptRatio} of the requests land on a fresh day (accepted) and the remainder are split
+ * between a day that is already booked and a time that is not on the hour or half past (rejected). The manager is
+ * rebuilt from the same pre-built appointments each time the request stream wraps around, so every pass sees the same
+ * accept/reject mix and accepted bookings don't grow it without bound. That rebuild is amortized over the whole stream.
+ *
+ * The available slots search is measured against a user whose next {@code bookedDays} days are all booked, which is the
+ * worst case for it since every one of those days has to be skipped before the first free slot.
+ *
+ * @author Austin Pilz
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class UserAppointmentManagerBenchmark {
+
+    private static final int REQUEST_STREAM_SIZE = 1 << 16;
+
+    @State(Scope.Thread)
+    public static class ManagerState {
+
+        @Param({"1", "50", "500"})
+        int appointmentsPerUser;
+
+        @Param({"1.0", "0.5", "0.0"})
+        double acceptRatio;
+
+        UserAppointmentManager manager;
+        MavenAppointment[] existingAppointments;
+        ScheduleAppointmentRequest[] requests;
+        int next;
+
+        @Setup(Level.Trial)
+        public void prepare() {
+
+            LocalDate firstDay = LocalDate.now();
+            existingAppointments = new MavenAppointment[appointmentsPerUser];
+
+            for (int day = 0; day < appointmentsPerUser; day++) {
+                LocalDateTime start = firstDay.plusDays(day).atTime(9, 0);
+                existingAppointments[day] = MavenAppointment.builder()
+                        .userId("benchmarkUser")
+                        .start(start)
+                        .end(start.plusMinutes(30))
+                        .build();
+            }
+
+            // Build the request stream up front so the benchmark measures scheduling, not request construction.
+            SplittableRandom random = new SplittableRandom(42);
+            requests = new ScheduleAppointmentRequest[REQUEST_STREAM_SIZE];
+            int freshDay = appointmentsPerUser;
+
+            for (int i = 0; i < requests.length; i++) {
+                LocalDateTime time;
+
+                if (random.nextDouble() < acceptRatio) {
+                    time = firstDay.plusDays(freshDay++).atTime(10, 30);
+                } else if (appointmentsPerUser > 0 && random.nextBoolean()) {
+                    time = firstDay.plusDays(random.nextInt(appointmentsPerUser)).atTime(11, 0);
+                } else {
+                    time = firstDay.plusDays(random.nextInt(Math.max(1, freshDay))).atTime(11, 7);
+                }
+
+                requests[i] = ScheduleAppointmentRequest.builder()
+                        .userId("benchmarkUser")
+                        .appointmentTime(time)
+                        .build();
+            }
+
+            resetManager();
+        }
+
+        void resetManager() {
+
+            manager = new UserAppointmentManager("benchmarkUser");
+
+            for (MavenAppointment appointment : existingAppointments) {
+                manager.addAppointment(appointment);
+            }
+
+            next = 0;
+        }
+
+        ScheduleAppointmentRequest nextRequest() {
+
+            if (next == REQUEST_STREAM_SIZE) {
+                resetManager();
+            }
+
+            return requests[next++];
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class TimeState {
+
+        final UserAppointmentManager manager = new UserAppointmentManager("benchmarkUser");
+        final LocalDateTime validTime = LocalDate.now().atTime(14, 30);
+        final LocalDateTime invalidTime = LocalDate.now().atTime(14, 31);
+    }
+
+    @State(Scope.Thread)
+    public static class AvailabilityState {
+
+        @Param({"0", "1000", "10000"})
+        int bookedDays;
+
+        UserAppointmentManager manager;
+        LocalDateTime after;
+
+        @Setup(Level.Trial)
+        public void prepare() {
+
+            LocalDate firstDay = LocalDate.now();
+            manager = new UserAppointmentManager("benchmarkUser");
+
+            for (int day = 0; day < bookedDays; day++) {
+                LocalDateTime start = firstDay.plusDays(day).atTime(9, 0);
+                manager.addAppointment(MavenAppointment.builder()
+                        .userId("benchmarkUser")
+                        .start(start)
+                        .end(start.plusMinutes(30))
+                        .build());
+            }
+
+            after = firstDay.atTime(8, 10);
+        }
+    }
+
+    @Benchmark
+    public List<AvailableSlot> getAvailableSlots(AvailabilityState state) {
+
+        return state.manager.getAvailableSlots(state.after, 10);
+    }
+
+    @Benchmark
+    public ScheduleAppointmentResponse scheduleAppointment(ManagerState state) {
+
+        return state.manager.scheduleAppointment(state.nextRequest());
+    }
+
+    @Benchmark
+    public boolean isAppointmentTimeValid_valid(TimeState state) {
+
+        return state.manager.isAppointmentTimeValid(state.validTime);
+    }
+
+    @Benchmark
+    public boolean isAppointmentTimeValid_invalid(TimeState state) {
+
+        return state.manager.isAppointmentTimeValid(state.invalidTime);
+    }
+}
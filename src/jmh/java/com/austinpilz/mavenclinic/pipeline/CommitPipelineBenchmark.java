@@ -0,0 +1,124 @@
+package com.austinpilz.mavenclinic.pipeline;
+
+import com.austinpilz.mavenclinic.core.ScheduleAppointmentRequest;
+import com.austinpilz.mavenclinic.core.ScheduleAppointmentResponse;
+import com.austinpilz.mavenclinic.persistence.AppointmentPersistence;
+import com.austinpilz.mavenclinic.persistence.FsyncPolicy;
+import com.austinpilz.mavenclinic.persistence.PersistenceProperties;
+import com.austinpilz.mavenclinic.service.AppointmentService;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Benchmarks single bookings through the {@link AppointmentService} with bookings applied on the calling threads
+ * ({@code synchronous}) against bookings handed to the {@link CommitPipeline} ({@code pipeline}), with the journal on
+ * disk under the provided fsync policy. Every booking is accepted, so every one is journaled. Read the throughput at
+ * several thread counts (--threads=1,4,16): under {@code ALWAYS} each synchronous booking waits for its own force while
+ * the pipeline's writers force once per batch, and their batches grow with the number of threads booking.
+ *
+ * The journal goes to a temporary directory on the default file system, whose disk decides how much a force costs.
+ *
+ * @author Austin Pilz
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CommitPipelineBenchmark {
+
+    private static final int USER_COUNT = 10_000;
+
+    @State(Scope.Benchmark)
+    public static class ServiceState {
+
+        @Param({"synchronous", "pipeline"})
+        String path;
+
+        @Param({"ALWAYS", "NEVER"})
+        FsyncPolicy fsyncPolicy;
+
+        Path directory;
+        AppointmentPersistence persistence;
+        CommitPipeline pipeline;
+        AppointmentService service;
+        String[] userIds;
+        LocalDate firstDay;
+
+        @Setup
+        public void prepare() throws IOException {
+
+            directory = Files.createTempDirectory("pipeline-benchmark");
+
+            PersistenceProperties persistenceProperties = new PersistenceProperties();
+            persistenceProperties.setEnabled(true);
+            persistenceProperties.setDirectory(directory.toString());
+            persistenceProperties.setFsyncPolicy(fsyncPolicy);
+            persistenceProperties.setSnapshotInterval(Duration.ofHours(1));
+            persistence = new AppointmentPersistence(persistenceProperties);
+
+            if (path.equals("pipeline")) {
+                PipelineProperties pipelineProperties = new PipelineProperties();
+                pipelineProperties.setEnabled(true);
+                pipeline = new CommitPipeline(pipelineProperties, new CompositeMeterRegistry());
+            }
+
+            service = new AppointmentService(persistence, pipeline);
+            userIds = new String[USER_COUNT];
+            firstDay = LocalDate.now();
+
+            for (int user = 0; user < USER_COUNT; user++) {
+                userIds[user] = "user" + user;
+            }
+        }
+
+        @TearDown
+        public void cleanup() throws IOException {
+
+            if (pipeline != null) {
+                pipeline.close();
+            }
+            persistence.close();
+
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+
+        final SplittableRandom random = new SplittableRandom();
+
+        // Each thread walks forward through its own block of future days so every booking is accepted.
+        int freshDay = (int) (Thread.currentThread().getId() % 1_000) * 100_000;
+    }
+
+    @Benchmark
+    public ScheduleAppointmentResponse scheduleAppointment(ServiceState state, ThreadState thread) {
+
+        return state.service.scheduleAppointment(ScheduleAppointmentRequest.builder()
+                .userId(state.userIds[thread.random.nextInt(USER_COUNT)])
+                .appointmentTime(state.firstDay.plusDays(thread.freshDay++).atTime(10, 30))
+                .build());
+    }
+}
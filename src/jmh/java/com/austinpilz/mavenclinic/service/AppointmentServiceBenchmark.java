@@ -0,0 +1,98 @@
+package com.austinpilz.mavenclinic.service;
+
+import com.austinpilz.mavenclinic.core.MavenAppointment;
+import com.austinpilz.mavenclinic.core.ScheduleAppointmentRequest;
+import com.austinpilz.mavenclinic.core.ScheduleAppointmentResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Benchmarks the {@link AppointmentService} as the controllers use it, with all benchmark threads sharing a single
+ * service so the concurrent store is exercised under contention (use the runner's --threads option).
+ *
+ * The service is pre-filled with {@code userCount} users holding {@code appointmentsPerUser} bookings each. Lookups pick
+ * a random user. Bookings pick a random user and, for {@code acceptRatio} of the calls, a day far past anything that user
+ * has booked; the rest hit an already booked day. Requests for bookings are built per call, the same as the controller
+ * receives a freshly deserialized request, so their allocation is part of the result.
+ *
+ * @author Austin Pilz
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class AppointmentServiceBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class ServiceState {
+
+        @Param({"1000", "100000"})
+        int userCount;
+
+        @Param({"1", "50"})
+        int appointmentsPerUser;
+
+        @Param({"1.0", "0.5", "0.0"})
+        double acceptRatio;
+
+        AppointmentService service;
+        String[] userIds;
+        LocalDate firstDay;
+
+        @Setup
+        public void prepare() {
+
+            service = new AppointmentService();
+            userIds = new String[userCount];
+            firstDay = LocalDate.now();
+
+            for (int user = 0; user < userCount; user++) {
+                userIds[user] = "user" + user;
+
+                for (int day = 0; day < appointmentsPerUser; day++) {
+                    service.scheduleAppointment(ScheduleAppointmentRequest.builder()
+                            .userId(userIds[user])
+                            .appointmentTime(firstDay.plusDays(day).atTime(9, 0))
+                            .build());
+                }
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+
+        final SplittableRandom random = new SplittableRandom();
+
+        // Each thread walks forward through its own block of future days so accepted bookings never collide.
+        int freshDay = 1_000 + (int) (Thread.currentThread().getId() % 1_000) * 100_000;
+    }
+
+    @Benchmark
+    public List<MavenAppointment> getUserAppointments(ServiceState state, ThreadState thread) {
+
+        return state.service.getUserAppointments(state.userIds[thread.random.nextInt(state.userCount)]);
+    }
+
+    @Benchmark
+    public ScheduleAppointmentResponse scheduleAppointment(ServiceState state, ThreadState thread) {
+
+        int day = thread.random.nextDouble() < state.acceptRatio
+                ? thread.freshDay++
+                : thread.random.nextInt(Math.max(1, state.appointmentsPerUser));
+
+        return state.service.scheduleAppointment(ScheduleAppointmentRequest.builder()
+                .userId(state.userIds[thread.random.nextInt(state.userCount)])
+                .appointmentTime(state.firstDay.plusDays(day).atTime(10, 30))
+                .build());
+    }
+}
@@ -0,0 +1,115 @@
+package com.austinpilz.mavenclinic.service;
+
+import com.austinpilz.mavenclinic.core.ScheduleAppointmentRequest;
+import com.austinpilz.mavenclinic.core.ScheduleAppointmentResponse;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+/**
+ * Benchmarks the whole booking path behind POST /appointments the way the controller runs it: the JSON body is read
+ * into a {@link ScheduleAppointmentRequest}, scheduled through the {@link AppointmentService} and the response written
+ * back out as JSON. Meant to be read with the GC profiler's {@code gc.alloc.rate.norm} (bytes allocated per booking),
+ * which {@link com.austinpilz.mavenclinic.benchmark.BenchmarkRunner} always enables, since allocation on this path is
+ * what drives GC pauses at peak booking hours.
+ *
+ * {@code outcome} picks what every request in the run does: {@code accepted} books a fresh day (the service is rebuilt
+ * each time the days run out, amortized over the stream), {@code duplicate-day} asks for a day that is already booked
+ * and {@code invalid-time} asks for a time that isn't on the hour or half past.
+ *
+ * @author Austin Pilz
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BookingPathBenchmark {
+
+    private static final int REQUEST_STREAM_SIZE = 1 << 14;
+
+    @State(Scope.Thread)
+    public static class BookingState {
+
+        @Param({"accepted", "duplicate-day", "invalid-time"})
+        String outcome;
+
+        ObjectMapper objectMapper;
+        AppointmentService service;
+        byte[][] requests;
+        int next;
+
+        @Setup(Level.Trial)
+        public void prepare() throws IOException {
+
+            // Configured the way Spring Boot configures the controllers' object mapper.
+            objectMapper = new ObjectMapper()
+                    .registerModule(new JavaTimeModule())
+                    .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                    .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+            LocalDate firstDay = LocalDate.now().plusDays(1);
+            requests = new byte[REQUEST_STREAM_SIZE][];
+
+            for (int i = 0; i < requests.length; i++) {
+                String time;
+
+                if ("accepted".equals(outcome)) {
+                    time = firstDay.plusDays(i).atTime(10, 30).toString();
+                } else if ("duplicate-day".equals(outcome)) {
+                    time = firstDay.atTime(11, 0).toString();
+                } else {
+                    time = firstDay.plusDays(i % 30).atTime(11, 7).toString();
+                }
+
+                requests[i] = ("{\"appointmentTime\":\"" + time + "\",\"userId\":\"benchmarkUser\"}").getBytes(StandardCharsets.UTF_8);
+            }
+
+            resetService();
+        }
+
+        void resetService() {
+
+            service = new AppointmentService();
+            next = 0;
+
+            if (!"accepted".equals(outcome)) {
+                // Give the user a booking (and with it a manager), so rejections run through the user's lock.
+                service.scheduleAppointment(ScheduleAppointmentRequest.builder()
+                        .userId("benchmarkUser")
+                        .appointmentTime(LocalDate.now().plusDays(1).atTime(9, 0))
+                        .build());
+            }
+        }
+
+        byte[] nextRequest() {
+
+            if (next == REQUEST_STREAM_SIZE) {
+                resetService();
+            }
+
+            return requests[next++];
+        }
+    }
+
+    @Benchmark
+    public byte[] book(BookingState state) throws IOException {
+
+        ScheduleAppointmentRequest request = state.objectMapper.readValue(state.nextRequest(), ScheduleAppointmentRequest.class);
+        ScheduleAppointmentResponse response = state.service.scheduleAppointment(request);
+
+        return state.objectMapper.writeValueAsBytes(response);
+    }
+}
@@ -0,0 +1,160 @@
+package com.austinpilz.mavenclinic.loadtest;
+
+import lombok.Data;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The traffic a load test drives and where it drives it, parsed from {@code --name=value} arguments. Any argument
+ * starting with {@code --app.} is handed to the application the load test starts, without the prefix.
+ *
+ * @author Austin Pilz
+ */
+@Data
+public class LoadProfile {
+
+    /**
+     * Base URL of a running application to drive. When empty, the load test starts one of its own.
+     */
+    private String target;
+
+    /**
+     * Number of distinct users.
+     */
+    private int users = 100_000;
+
+    /**
+     * Zipf exponent of how often each user is picked, 0 for uniform.
+     */
+    private double zipf = 1.0;
+
+    /**
+     * Requests started per second, whether or not earlier ones have been answered.
+     */
+    private int rate = 1_000;
+
+    /**
+     * Share of the requests that are bookings, the rest read a user's appointments.
+     */
+    private double writeRatio = 0.2;
+
+    /**
+     * Share of the bookings made to be rejected, split between days the user already booked and invalid times.
+     */
+    private double rejectRatio = 0.1;
+
+    /**
+     * How long the traffic runs before anything is recorded.
+     */
+    private Duration warmUp = Duration.ofSeconds(10);
+
+    /**
+     * How long the traffic is recorded for. Set it to hours to soak the application.
+     */
+    private Duration duration = Duration.ofSeconds(60);
+
+    /**
+     * How often the latencies of the last interval are printed and logged.
+     */
+    private Duration reportInterval = Duration.ofSeconds(10);
+
+    /**
+     * Requests allowed to be waiting on a response before new ones are counted as failed without being sent, so an
+     * application that has stopped answering can't exhaust the load generator.
+     */
+    private int maxInFlight = 10_000;
+
+    /**
+     * Directory the report and histogram logs are written to.
+     */
+    private String output = "target/loadtest";
+
+    /**
+     * Report of an earlier run to compare this one against.
+     */
+    private String baseline;
+
+    /**
+     * Properties for the application the load test starts.
+     */
+    private Map<String, String> application = new LinkedHashMap<>();
+
+    /**
+     * Parses a profile from the provided arguments, each of the form {@code --name=value}.
+     *
+     * @param args Arguments.
+     * @return Profile.
+     * @author Austin Pilz
+     */
+    public static LoadProfile parse(String[] args) {
+
+        LoadProfile profile = new LoadProfile();
+
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --name=value but got " + arg + ".");
+            }
+
+            String name = arg.substring(2, separator);
+            String value = arg.substring(separator + 1);
+
+            if (name.startsWith("app.")) {
+                profile.application.put(name.substring(4), value);
+                continue;
+            }
+
+            switch (name) {
+                case "target":
+                    profile.target = value;
+                    break;
+                case "users":
+                    profile.users = Integer.parseInt(value);
+                    break;
+                case "zipf":
+                    profile.zipf = Double.parseDouble(value);
+                    break;
+                case "rate":
+                    profile.rate = Integer.parseInt(value);
+                    break;
+                case "writeRatio":
+                    profile.writeRatio = Double.parseDouble(value);
+                    break;
+                case "rejectRatio":
+                    profile.rejectRatio = Double.parseDouble(value);
+                    break;
+                case "warmUp":
+                    profile.warmUp = parseDuration(value);
+                    break;
+                case "duration":
+                    profile.duration = parseDuration(value);
+                    break;
+                case "reportInterval":
+                    profile.reportInterval = parseDuration(value);
+                    break;
+                case "maxInFlight":
+                    profile.maxInFlight = Integer.parseInt(value);
+                    break;
+                case "output":
+                    profile.output = value;
+                    break;
+                case "baseline":
+                    profile.baseline = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option --" + name + ".");
+            }
+        }
+
+        return profile;
+    }
+
+    private static Duration parseDuration(String value) {
+
+        // Accepts 90s, 10m, 2h as well as a full ISO-8601 duration.
+        return Duration.parse(value.startsWith("P") ? value : "PT" + value.toUpperCase());
+    }
+}
@@ -0,0 +1,119 @@
+package com.austinpilz.mavenclinic.loadtest;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.HdrHistogram.Histogram;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The outcome of a load test run, written out as JSON so later runs can be compared against it.
+ *
+ * @author Austin Pilz
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+public class LoadReport {
+
+    // A percentile this much slower than the baseline is flagged as a regression.
+    private static final double REGRESSION_THRESHOLD = 0.10;
+
+    private Instant startedAt;
+    private LoadProfile profile;
+    private Map<String, OperationReport> operations;
+
+    /**
+     * Latencies and outcomes of one kind of request over the recorded part of the run.
+     */
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @Data
+    @Builder
+    public static class OperationReport {
+
+        private long count;
+        private long failures;
+        private double throughputPerSecond;
+        private double p50Millis;
+        private double p90Millis;
+        private double p99Millis;
+        private double p999Millis;
+        private double maxMillis;
+
+        /**
+         * Number of responses per HTTP status, with 0 for requests that failed without one.
+         */
+        private Map<Integer, Long> statuses;
+
+        /**
+         * Builds the report of an operation from its latencies, recorded in microseconds.
+         *
+         * @param histogram Latencies.
+         * @param failures Requests that failed.
+         * @param statuses Responses per HTTP status.
+         * @param seconds Seconds the latencies were recorded over.
+         * @return Operation report.
+         * @author Austin Pilz
+         */
+        public static OperationReport of(Histogram histogram, long failures, Map<Integer, Long> statuses, double seconds) {
+
+            return OperationReport.builder()
+                    .count(histogram.getTotalCount())
+                    .failures(failures)
+                    .throughputPerSecond(histogram.getTotalCount() / seconds)
+                    .p50Millis(histogram.getValueAtPercentile(50) / 1000.0)
+                    .p90Millis(histogram.getValueAtPercentile(90) / 1000.0)
+                    .p99Millis(histogram.getValueAtPercentile(99) / 1000.0)
+                    .p999Millis(histogram.getValueAtPercentile(99.9) / 1000.0)
+                    .maxMillis(histogram.getMaxValue() / 1000.0)
+                    .statuses(new TreeMap<>(statuses))
+                    .build();
+        }
+    }
+
+    /**
+     * Formats this report as a table, side by side with the provided baseline when there is one.
+     *
+     * @param baseline Report of an earlier run, or null.
+     * @return Table.
+     * @author Austin Pilz
+     */
+    public String format(LoadReport baseline) {
+
+        StringBuilder table = new StringBuilder();
+
+        operations.forEach((name, current) -> {
+            OperationReport before = baseline == null ? null : baseline.getOperations().get(name);
+
+            table.append(String.format("%n%s: %,d requests, %,.0f/s, %,d failed, statuses %s%n", name, current.getCount(),
+                    current.getThroughputPerSecond(), current.getFailures(), current.getStatuses()));
+
+            row(table, "p50", current.getP50Millis(), before == null ? null : before.getP50Millis());
+            row(table, "p90", current.getP90Millis(), before == null ? null : before.getP90Millis());
+            row(table, "p99", current.getP99Millis(), before == null ? null : before.getP99Millis());
+            row(table, "p99.9", current.getP999Millis(), before == null ? null : before.getP999Millis());
+            row(table, "max", current.getMaxMillis(), before == null ? null : before.getMaxMillis());
+        });
+
+        return table.toString();
+    }
+
+    private static void row(StringBuilder table, String label, double current, Double before) {
+
+        table.append(String.format("  %-6s %10.3f ms", label, current));
+
+        if (before != null && before > 0) {
+            double change = (current - before) / before;
+            table.append(String.format("  (baseline %10.3f ms, %+6.1f%%%s)", before, change * 100,
+                    change > REGRESSION_THRESHOLD ? " REGRESSION" : ""));
+        }
+
+        table.append(System.lineSeparator());
+    }
+}
@@ -0,0 +1,90 @@
+package com.austinpilz.mavenclinic.loadtest;
+
+import com.austinpilz.mavenclinic.MavenClinicSchedulingApplication;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Entry point for the load test. It drives the traffic described by a {@link LoadProfile} against the application,
+ * starting one locally unless a target is given, and reports the latency percentiles of bookings and lookups.
+ *
+ * Each run writes report.json and an HdrHistogram interval log per request type (book.hlog, read.hlog) to the output
+ * directory. Passing the report of an earlier run as the baseline prints every percentile next to the baseline's and
+ * flags the ones that got more than 10% slower.
+ *
+ * Usage: {@code mvn -Ploadtest test-compile exec:exec -Dloadtest.args="--rate=5000 --duration=5m"}
+ *
+ * @author Austin Pilz
+ */
+@Slf4j
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+
+        LoadProfile profile = LoadProfile.parse(args);
+        ObjectMapper objectMapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .enable(SerializationFeature.INDENT_OUTPUT);
+
+        Path output = Paths.get(profile.getOutput());
+        Files.createDirectories(output);
+
+        ConfigurableApplicationContext application = null;
+        String target = profile.getTarget();
+
+        if (StringUtils.isBlank(target)) {
+            application = start(profile);
+            target = "http://localhost:" + ((WebServerApplicationContext) application).getWebServer().getPort();
+        }
+
+        try {
+            log.info("Driving {} requests/s at {} for {} after a {} warm up.", profile.getRate(), target,
+                    profile.getDuration(), profile.getWarmUp());
+
+            Instant startedAt = Instant.now();
+            LoadReport report = LoadReport.builder()
+                    .startedAt(startedAt)
+                    .profile(profile)
+                    .operations(new TrafficGenerator(profile, target).run(output))
+                    .build();
+
+            LoadReport baseline = profile.getBaseline() == null
+                    ? null
+                    : objectMapper.readValue(Paths.get(profile.getBaseline()).toFile(), LoadReport.class);
+
+            objectMapper.writeValue(output.resolve("report.json").toFile(), report);
+            log.info("Report written to {}{}", output.resolve("report.json"), report.format(baseline));
+        } finally {
+            if (application != null) {
+                application.close();
+            }
+        }
+    }
+
+    private static ConfigurableApplicationContext start(LoadProfile profile) throws Exception {
+
+        // A fresh in-memory application on a free port, unless told otherwise.
+        List<String> properties = new ArrayList<>();
+        properties.add("server.port=0");
+        properties.add("maven.persistence.enabled=false");
+        profile.getApplication().forEach((name, value) -> properties.add(name + "=" + value));
+
+        return new SpringApplicationBuilder(MavenClinicSchedulingApplication.class)
+                .properties(properties.toArray(new String[0]))
+                .run();
+    }
+}
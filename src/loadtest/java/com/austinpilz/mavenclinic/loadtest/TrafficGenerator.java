@@ -0,0 +1,225 @@
+package com.austinpilz.mavenclinic.loadtest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.Recorder;
+
+import java.io.FileNotFoundException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The Traffic Generator drives an open model of traffic against the application: requests are started at a fixed rate
+ * whether or not the earlier ones have been answered, the way independent users arrive, rather than by a fixed number of
+ * clients each waiting for their last response before sending the next.
+ *
+ * Reviewer Note: Every latency is measured from when the request was due to be sent, not from when it actually was. If
+ * the generator falls behind because the application stalls, the requests it sends late still carry the time they spent
+ * waiting, so a stall shows up in the percentiles instead of being hidden by the generator slowing down with it
+ * (coordinated omission).
+ *
+ * Bookings go to days each user hasn't booked yet, unless they are meant to be rejected, in which case they go to a day
+ * the user already has or to a time that isn't on a half hour.
+ *
+ * @author Austin Pilz
+ */
+@Slf4j
+public class TrafficGenerator {
+
+    static final String BOOK = "book";
+    static final String READ = "read";
+
+    // Latencies are recorded in microseconds, anything slower than a minute is recorded as a minute.
+    private static final long HIGHEST_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final LoadProfile profile;
+    private final URI baseUri;
+    private final ZipfDistribution users;
+    private final AtomicIntegerArray bookedDays;
+    private final LocalDate firstDay = LocalDate.now().plusDays(1);
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Map<String, Operation> operations = new LinkedHashMap<>();
+
+    private static final class Operation {
+
+        private final Recorder recorder = new Recorder(HIGHEST_LATENCY_MICROS, 3);
+        private final Histogram total = new Histogram(HIGHEST_LATENCY_MICROS, 3);
+        private final LongAdder failures = new LongAdder();
+        private final ConcurrentMap<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        private HistogramLogWriter log;
+
+        private void record(long dueAt, int status) {
+
+            recorder.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - dueAt), HIGHEST_LATENCY_MICROS));
+            statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+
+            if (status == 0 || status >= 500) {
+                failures.increment();
+            }
+        }
+    }
+
+    public TrafficGenerator(LoadProfile profile, String target) {
+
+        this.profile = profile;
+        this.baseUri = URI.create(target);
+        this.users = new ZipfDistribution(profile.getUsers(), profile.getZipf());
+        this.bookedDays = new AtomicIntegerArray(profile.getUsers());
+
+        operations.put(BOOK, new Operation());
+        operations.put(READ, new Operation());
+    }
+
+    /**
+     * Runs the warm up and then the recorded part of the traffic, printing the latencies of each interval as it goes,
+     * and waits for the last responses.
+     *
+     * @param output Directory the histogram logs are written to.
+     * @return Report of the recorded part of the run.
+     * @throws FileNotFoundException If the histogram logs can't be written.
+     * @author Austin Pilz
+     */
+    public Map<String, LoadReport.OperationReport> run(Path output) throws FileNotFoundException {
+
+        for (Map.Entry<String, Operation> operation : operations.entrySet()) {
+            operation.getValue().log = new HistogramLogWriter(output.resolve(operation.getKey() + ".hlog").toFile());
+            operation.getValue().log.outputLogFormatVersion();
+            operation.getValue().log.outputLegend();
+        }
+
+        long periodNanos = TimeUnit.SECONDS.toNanos(1) / profile.getRate();
+        long startedAt = System.nanoTime();
+        long recordFrom = startedAt + profile.getWarmUp().toNanos();
+        long recordTo = recordFrom + profile.getDuration().toNanos();
+        long nextReport = recordFrom;
+        boolean recording = false;
+
+        for (long i = 0; ; i++) {
+            long dueAt = startedAt + i * periodNanos;
+
+            if (dueAt >= recordTo) {
+                break;
+            }
+
+            if (dueAt >= nextReport) {
+                // The first report only throws away what was recorded during the warm up.
+                report(recording);
+                recording = true;
+                nextReport += profile.getReportInterval().toNanos();
+            }
+
+            // Wait for the request to be due. A generator running behind sends straight away and catches up.
+            long wait = dueAt - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            send(dueAt);
+        }
+
+        // Give the last requests the same minute the histograms allow them before giving up on them.
+        long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(HIGHEST_LATENCY_MICROS);
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        report(true);
+
+        double seconds = profile.getDuration().toNanos() / 1e9;
+        Map<String, LoadReport.OperationReport> reports = new LinkedHashMap<>();
+        operations.forEach((name, operation) -> {
+            Map<Integer, Long> statuses = new LinkedHashMap<>();
+            operation.statuses.forEach((status, count) -> statuses.put(status, count.sum()));
+
+            reports.put(name, LoadReport.OperationReport.of(operation.total, operation.failures.sum(), statuses, seconds));
+            operation.log.close();
+        });
+
+        return reports;
+    }
+
+    private void send(long dueAt) {
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int user = users.next();
+        boolean book = random.nextDouble() < profile.getWriteRatio();
+        Operation operation = operations.get(book ? BOOK : READ);
+
+        if (inFlight.get() >= profile.getMaxInFlight()) {
+            // The application isn't keeping up, count the request as failed rather than pile more onto it.
+            operation.record(dueAt, 0);
+            return;
+        }
+
+        HttpRequest request = book
+                ? bookRequest(user, random)
+                : HttpRequest.newBuilder(baseUri.resolve("/users/user" + user + "/appointments")).build();
+
+        inFlight.incrementAndGet();
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+            inFlight.decrementAndGet();
+            operation.record(dueAt, error == null ? response.statusCode() : 0);
+        });
+    }
+
+    private HttpRequest bookRequest(int user, ThreadLocalRandom random) {
+
+        String time;
+
+        if (random.nextDouble() >= profile.getRejectRatio()) {
+            // A day the user hasn't booked yet.
+            time = firstDay.plusDays(bookedDays.getAndIncrement(user)) + "T10:30:00";
+        } else if (bookedDays.get(user) > 0 && random.nextBoolean()) {
+            // A day the user already booked.
+            time = firstDay + "T14:00:00";
+        } else {
+            // Not on a half hour.
+            time = firstDay.plusDays(bookedDays.get(user)) + "T10:15:00";
+        }
+
+        return HttpRequest.newBuilder(baseUri.resolve("/appointments"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"userId\":\"user" + user + "\",\"appointmentTime\":\"" + time + "\"}"))
+                .build();
+    }
+
+    private void report(boolean keep) {
+
+        StringBuilder line = new StringBuilder(keep ? "interval" : "warm up done");
+
+        operations.forEach((name, operation) -> {
+            Histogram interval = operation.recorder.getIntervalHistogram();
+
+            if (!keep) {
+                operation.failures.reset();
+                operation.statuses.clear();
+                return;
+            }
+
+            operation.total.add(interval);
+            operation.log.outputIntervalHistogram(interval);
+            line.append(String.format(" | %s %,d req p50 %.2f ms p99 %.2f ms p99.9 %.2f ms max %.2f ms", name,
+                    interval.getTotalCount(), interval.getValueAtPercentile(50) / 1000.0,
+                    interval.getValueAtPercentile(99) / 1000.0, interval.getValueAtPercentile(99.9) / 1000.0,
+                    interval.getMaxValue() / 1000.0));
+        });
+
+        log.info("{} | in flight {}", line, inFlight.get());
+    }
+}
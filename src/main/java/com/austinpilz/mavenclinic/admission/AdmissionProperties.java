@@ -0,0 +1,64 @@
+package com.austinpilz.mavenclinic.admission;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Configuration for the admission control of booking requests, bound from {@code maven.admission}.
+ *
+ * @author Austin Pilz
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "maven.admission")
+public class AdmissionProperties {
+
+    /**
+     * If bookings are subject to admission control. When disabled every booking is let through.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Bookings per second allowed across all users.
+     */
+    private double globalRate = 5_000;
+
+    /**
+     * Bookings allowed in a burst across all users, above the global rate.
+     */
+    private int globalBurst = 10_000;
+
+    /**
+     * Bookings per second allowed for a single user.
+     */
+    private double userRate = 2;
+
+    /**
+     * Bookings allowed in a burst for a single user, above their rate.
+     */
+    private int userBurst = 10;
+
+    /**
+     * Bookings processed at once. Bookings beyond this wait in the queue for one to finish.
+     */
+    private int maxConcurrent = 64;
+
+    /**
+     * Longest a booking waits in the queue while the queue keeps draining.
+     */
+    private Duration maxQueueDelay = Duration.ofMillis(100);
+
+    /**
+     * Longest a booking waits in the queue once the queue has stayed busy for a whole overload interval, so a standing
+     * queue is shed quickly instead of adding its delay to every booking.
+     */
+    private Duration targetQueueDelay = Duration.ofMillis(5);
+
+    /**
+     * How long the queue has to go without ever being empty before it counts as overloaded.
+     */
+    private Duration overloadInterval = Duration.ofMillis(100);
+}
@@ -0,0 +1,84 @@
+package com.austinpilz.mavenclinic.admission;
+
+/**
+ * A token bucket rate limit: tokens are added at a fixed rate up to a burst size, and each request takes one. A bucket
+ * that is out of tokens says how long until the next one, which becomes the Retry-After of the rejection.
+ *
+ * Reviewer Note: The bucket is refilled lazily from the time passed since it was last used rather than by a timer, so an
+ * idle bucket costs nothing. Times are passed in so the bucket can be tested without waiting on the clock.
+ *
+ * @author Austin Pilz
+ */
+public class TokenBucket {
+
+    private final double tokensPerNano;
+    private final double burst;
+
+    private double tokens;
+    private long refilledAt;
+
+    /**
+     * Creates a full bucket.
+     *
+     * @param ratePerSecond Tokens added per second.
+     * @param burst Most tokens the bucket holds.
+     * @param nowNanos Current {@link System#nanoTime()}.
+     * @author Austin Pilz
+     */
+    public TokenBucket(double ratePerSecond, double burst, long nowNanos) {
+
+        if (ratePerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("A token bucket needs a positive rate and room for at least one token.");
+        }
+
+        this.tokensPerNano = ratePerSecond / 1e9;
+        this.burst = burst;
+        this.tokens = burst;
+        this.refilledAt = nowNanos;
+    }
+
+    /**
+     * Takes the provided number of tokens if the bucket has them.
+     *
+     * @param permits Tokens to take.
+     * @param nowNanos Current {@link System#nanoTime()}.
+     * @return 0 if the tokens were taken, otherwise the nanoseconds until the bucket will have them.
+     * @author Austin Pilz
+     */
+    public synchronized long tryAcquire(int permits, long nowNanos) {
+
+        refill(nowNanos);
+
+        if (tokens >= permits) {
+            tokens -= permits;
+            return 0;
+        }
+
+        // More permits than the bucket can ever hold will never fit, report the time to fill it.
+        double missing = Math.min(permits, burst) - tokens;
+
+        return Math.max(1, (long) Math.ceil(missing / tokensPerNano));
+    }
+
+    /**
+     * Returns if the bucket is full, in which case dropping it and starting a new one later changes nothing.
+     *
+     * @param nowNanos Current {@link System#nanoTime()}.
+     * @return If the bucket is full.
+     * @author Austin Pilz
+     */
+    public synchronized boolean isFull(long nowNanos) {
+
+        refill(nowNanos);
+
+        return tokens >= burst;
+    }
+
+    private void refill(long nowNanos) {
+
+        if (nowNanos > refilledAt) {
+            tokens = Math.min(burst, tokens + (nowNanos - refilledAt) * tokensPerNano);
+            refilledAt = nowNanos;
+        }
+    }
+}
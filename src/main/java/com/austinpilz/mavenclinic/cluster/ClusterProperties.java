@@ -0,0 +1,64 @@
+package com.austinpilz.mavenclinic.cluster;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Configuration for running several nodes as one cluster, bound from {@code maven.cluster}.
+ *
+ * @author Austin Pilz
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "maven.cluster")
+public class ClusterProperties {
+
+    /**
+     * If users are sharded across the nodes of a cluster. When disabled, this node holds every user itself.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Base URL the other nodes reach this node at, such as http://10.0.0.5:8662. This is also the node's identity on the
+     * hash ring, so it must be the same every time the node starts.
+     */
+    private String self;
+
+    /**
+     * Secret shared by every node of the cluster, which they send each other on the /cluster endpoints. Required when
+     * the cluster is enabled, requests to those endpoints without it are refused.
+     */
+    private String secret;
+
+    /**
+     * Base URLs of nodes already in the cluster, which this node joins through on startup. Empty for the first node.
+     */
+    private List<String> seeds = new ArrayList<>();
+
+    /**
+     * Number of points each node is placed at on the hash ring. More points spread users more evenly at the cost of a
+     * larger ring.
+     */
+    private int virtualNodes = 128;
+
+    /**
+     * Timeout for connecting to another node.
+     */
+    private Duration connectTimeout = Duration.ofSeconds(1);
+
+    /**
+     * Timeout for a response from another node.
+     */
+    private Duration readTimeout = Duration.ofSeconds(5);
+
+    /**
+     * Most requests this node forwards to other nodes at once, requests over it are shed with 429 Too Many Requests. Must
+     * be below server.tomcat.threads.max, 0 uses half of it.
+     */
+    private int maxForwards = 0;
+}
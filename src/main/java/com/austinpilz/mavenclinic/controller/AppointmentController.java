@@ -1,27 +1,58 @@
 package com.austinpilz.mavenclinic.controller;
 
+import com.austinpilz.mavenclinic.admission.AdmissionControl;
+import com.austinpilz.mavenclinic.core.MavenAppointment;
 import com.austinpilz.mavenclinic.core.ScheduleAppointmentRequest;
 import com.austinpilz.mavenclinic.core.ScheduleAppointmentResponse;
+import com.austinpilz.mavenclinic.exception.AdmissionRejectedException;
+import com.austinpilz.mavenclinic.idempotency.IdempotencyCache;
+import com.austinpilz.mavenclinic.server.WireFormatConfiguration;
 import com.austinpilz.mavenclinic.service.AppointmentService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import lombok.AllArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.List;
 
 /**
  * This is the appointment controller which is used to access and interact with the appointments in the system.
  *
+ * Scheduling accepts an optional Idempotency-Key header. A retry with the same key gets the original outcome (and
+ * status) back from the {@link IdempotencyCache} without the booking being run again, marked with the
+ * Idempotent-Replayed header.
+ *
+ * Bookings can be sent and answered in Smile rather than JSON (see {@link WireFormatConfiguration}) by setting the
+ * Content-Type and Accept headers to application/x-jackson-smile. JSON is used whenever the client doesn't ask for Smile.
+ *
+ * Bookings first pass {@link AdmissionControl}. One that is shed is answered 429 Too Many Requests, with a Retry-After
+ * header saying how many seconds to wait before trying again.
+ *
  * @author Austin Pilz
  */
 @RestController
@@ -29,7 +60,13 @@ import javax.validation.Valid;
 @AllArgsConstructor
 public class AppointmentController {
 
+    static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    static final String IDEMPOTENT_REPLAYED_HEADER = "Idempotent-Replayed";
+
     private final AppointmentService appointmentService;
+    private final AdmissionControl admissionControl;
+    private final IdempotencyCache idempotencyCache;
+    private final ObjectMapper objectMapper;
 
     @Operation(summary = "Schedule new appointment.")
     @ApiResponses(value = {
@@ -42,20 +79,119 @@ public class AppointmentController {
                     content = {
                             @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
                                     schema = @Schema(implementation = ScheduleAppointmentResponse.class))
-            })
+            }),
+            @ApiResponse(responseCode = "400", description = "Idempotency-Key is empty or too long.",
+                    content = {@Content}),
+            @ApiResponse(responseCode = "422", description = "Idempotency-Key was already used for a different appointment.",
+                    content = {@Content}),
+            @ApiResponse(responseCode = "429", description = "Too many bookings, retry after the number of seconds in Retry-After.",
+                    content = {@Content})
     })
-    @RequestMapping(value = "", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<ScheduleAppointmentResponse> scheduleAppointment(@Valid @RequestBody ScheduleAppointmentRequest request) {
+    @RequestMapping(value = "", method = RequestMethod.POST,
+            produces = {MediaType.APPLICATION_JSON_VALUE, WireFormatConfiguration.APPLICATION_SMILE_VALUE})
+    public ResponseEntity<ScheduleAppointmentResponse> scheduleAppointment(
+            @Valid @RequestBody ScheduleAppointmentRequest request,
+            @Parameter(description = "Client chosen key (up to " + IdempotencyCache.MAX_KEY_LENGTH + " characters) that makes retries of this request return its original outcome.")
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+
+        ScheduleAppointmentResponse response;
+        boolean replayed = false;
+
+        try (AdmissionControl.Permit permit = admissionControl.admit(request.getUserId())) {
+            if (idempotencyKey == null) {
+                // Process the request for the new appointment.
+                response = appointmentService.scheduleAppointment(request);
+            } else {
+                // Process the request for the new appointment, unless this is a retry of one already processed.
+                IdempotencyCache.Result result = idempotencyCache.execute(idempotencyKey, request,
+                        () -> appointmentService.scheduleAppointment(request));
+                response = result.getResponse();
+                replayed = result.isReplayed();
+            }
+        }
 
-        // Process the request for the new appointment.
-        ScheduleAppointmentResponse response = appointmentService.scheduleAppointment(request);
+        // The appointment was accepted, return 201 Created. Otherwise just return 200 OK.
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(response.isAppointmentAccepted() ? HttpStatus.CREATED : HttpStatus.OK);
+
+        if (replayed) {
+            builder.header(IDEMPOTENT_REPLAYED_HEADER, "true");
+        }
+
+        return builder.body(response);
+    }
+
+    @Operation(summary = "Schedule a batch of new appointments.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Batch processed, the outcome of each appointment is returned in order.",
+                    content = {
+                            @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    array = @ArraySchema(schema = @Schema(implementation = ScheduleAppointmentResponse.class)))
+                    }),
+            @ApiResponse(responseCode = "413", description = "Batch exceeds the maximum number of appointments.",
+                    content = {@Content}),
+            @ApiResponse(responseCode = "429", description = "Too many bookings, retry after the number of seconds in Retry-After.",
+                    content = {@Content})
+    })
+    @RequestMapping(value = "batch", method = RequestMethod.POST,
+            produces = {MediaType.APPLICATION_JSON_VALUE, WireFormatConfiguration.APPLICATION_SMILE_VALUE})
+    public List<ScheduleAppointmentResponse> scheduleAppointments(@RequestBody List<ScheduleAppointmentRequest> requests) {
 
-        if (response.isAppointmentAccepted()) {
-            // The appointment was accepted. Return 201 Created.
-            return new ResponseEntity<>(response, HttpStatus.CREATED);
+        // Process the batch, each response lines up with the request at the same position.
+        try (AdmissionControl.Permit permit = admissionControl.admitBatch(requests.size())) {
+            return appointmentService.scheduleAppointments(requests);
         }
+    }
+
+    @ExceptionHandler(AdmissionRejectedException.class)
+    public ResponseEntity<Void> handleAdmissionRejected(AdmissionRejectedException e) {
+
+        // Answer straight away with no body, the point is for a shed booking to cost next to nothing.
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(e.getRetryAfterSeconds()))
+                .build();
+    }
+
+    @Operation(summary = "Export all appointments as newline-delimited JSON.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Every appointment, one JSON object per line.",
+                    content = {
+                            @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE,
+                                    schema = @Schema(implementation = MavenAppointment.class))
+                    })
+    })
+    @RequestMapping(value = "export", method = RequestMethod.GET, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportAppointments(
+            @Parameter(description = "First date to include (yyyy-MM-dd).")
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @Parameter(description = "Last date to include (yyyy-MM-dd).")
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+
+        // Stream the appointments user by user as they are read, rather than building the whole export in memory.
+        // Flushing is left to the generator's buffer rather than after every row.
+        ObjectWriter writer = objectMapper.writerFor(MavenAppointment.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        StreamingResponseBody body = output -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(output)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.setRootValueSeparator(null);
+
+                appointmentService.forEachAppointments(from, to, appointments -> {
+                    try {
+                        for (MavenAppointment appointment : appointments) {
+                            writer.writeValue(generator, appointment);
+                            generator.writeRaw('\n');
+                        }
+                    } catch (IOException e) {
+                        // Most likely the client went away, which stops the export.
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
 
-        // The appointment was not accepted, just return 200 OK.
-        return new ResponseEntity<>(response, HttpStatus.OK);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
     }
 }
@@ -0,0 +1,170 @@
+package com.austinpilz.mavenclinic.controller;
+
+import com.austinpilz.mavenclinic.cluster.ClusterMembership;
+import com.austinpilz.mavenclinic.cluster.ClusterRouter;
+import com.austinpilz.mavenclinic.cluster.HandOffSchedule;
+import com.austinpilz.mavenclinic.core.AppointmentPage;
+import com.austinpilz.mavenclinic.core.AvailableSlot;
+import com.austinpilz.mavenclinic.core.MavenAppointment;
+import com.austinpilz.mavenclinic.core.ScheduleAppointmentRequest;
+import com.austinpilz.mavenclinic.core.ScheduleAppointmentResponse;
+import com.austinpilz.mavenclinic.core.ScheduleOutcome;
+import com.austinpilz.mavenclinic.exception.NotShardOwnerException;
+import com.austinpilz.mavenclinic.server.WireFormatConfiguration;
+import com.austinpilz.mavenclinic.service.AppointmentService;
+import io.swagger.v3.oas.annotations.Hidden;
+import lombok.AllArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * This is the cluster controller which the nodes of a cluster use to talk to each other: to join, to hand users over to
+ * the node that now owns them, and to serve the requests forwarded by the {@link ClusterRouter}.
+ *
+ * Reviewer Note: The forwarded requests are only ever served here, never forwarded again. A node that doesn't own the
+ * user answers 409 CONFLICT instead, and the sender catches up with that node's view of the cluster before retrying,
+ * so two nodes that briefly disagree about the owner can't bounce a request between them.
+ *
+ * The nodes talk Smile to each other (see {@link WireFormatConfiguration}), JSON is only there for poking at a node by
+ * hand.
+ *
+ * These endpoints are for the nodes only and are left out of the API documentation. Requests to them must carry the
+ * cluster's shared secret (see {@link com.austinpilz.mavenclinic.cluster.ClusterSecretInterceptor}), and they should
+ * still not be reachable from outside of the cluster's network.
+ *
+ * @author Austin Pilz
+ */
+@Hidden
+@RestController
+@RequestMapping("/cluster")
+@AllArgsConstructor
+@ConditionalOnProperty(prefix = "maven.cluster", name = "enabled", havingValue = "true")
+public class ClusterController {
+
+    private final ClusterMembership membership;
+    private final ClusterRouter router;
+    private final AppointmentService appointmentService;
+
+    @RequestMapping(value = "nodes", method = RequestMethod.GET,
+            produces = {MediaType.APPLICATION_JSON_VALUE, WireFormatConfiguration.APPLICATION_SMILE_VALUE})
+    public List<String> getNodes() {
+
+        return membership.getRing().getNodes();
+    }
+
+    @RequestMapping(value = "nodes", method = RequestMethod.POST,
+            produces = {MediaType.APPLICATION_JSON_VALUE, WireFormatConfiguration.APPLICATION_SMILE_VALUE})
+    public List<String> join(@RequestParam(value = "node") String node) {
+
+        return membership.join(node);
+    }
+
+    @RequestMapping(value = "handoff", method = RequestMethod.GET,
+            produces = {MediaType.APPLICATION_JSON_VALUE, WireFormatConfiguration.APPLICATION_SMILE_VALUE})
+    public List<String> getHandOffUsers(@RequestParam(value = "to") String to) {
+
+        return router.getHandOffUsers(to);
+    }
+
+    @RequestMapping(value = "users/{userId}/handoff", method = RequestMethod.POST,
+            produces = {MediaType.APPLICATION_JSON_VALUE, WireFormatConfiguration.APPLICATION_SMILE_VALUE})
+    public HandOffSchedule handOff(@PathVariable(value = "userId") String userId, @RequestParam(value = "to") String to) {
+
+        return router.handOff(userId, to);
+    }
+
+    @RequestMapping(value = "users/{userId}/handoff", method = RequestMethod.DELETE)
+    public void release(@PathVariable(value = "userId") String userId, @RequestParam(value = "to") String to) {
+
+        router.release(userId, to);
+    }
+
+    @RequestMapping(value = "appointments", method = RequestMethod.POST,
+            produces = {MediaType.APPLICATION_JSON_VALUE, WireFormatConfiguration.APPLICATION_SMILE_VALUE})
+    public List<String> scheduleAppointments(@RequestBody List<ScheduleAppointmentRequest> requests) {
+
+        for (ScheduleAppointmentRequest request : requests) {
+            requireLocal(request.getUserId());
+        }
+
+        // Only the outcomes go back, the sender rebuilds the responses from them.
+        return appointmentService.scheduleAppointments(requests).stream()
+                .map(ScheduleAppointmentResponse::getOutcome)
+                .map(ScheduleOutcome::getTag)
+                .collect(Collectors.toList());
+    }
+
+    @RequestMapping(value = "users/{userId}/appointments", method = RequestMethod.GET,
+            produces = {MediaType.APPLICATION_JSON_VALUE, WireFormatConfiguration.APPLICATION_SMILE_VALUE})
+    public List<MavenAppointment> getUserAppointments(@PathVariable(value = "userId") String userId) {
+
+        requireLocal(userId);
+
+        return appointmentService.getUserAppointments(userId);
+    }
+
+    @RequestMapping(value = "users/{userId}/appointments/page", method = RequestMethod.GET,
+            produces = {MediaType.APPLICATION_JSON_VALUE, WireFormatConfiguration.APPLICATION_SMILE_VALUE})
+    public AppointmentPage getUserAppointments(
+            @PathVariable(value = "userId") String userId,
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(value = "cursor", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate cursor,
+            @RequestParam(value = "limit") int limit) {
+
+        requireLocal(userId);
+
+        return appointmentService.getUserAppointments(userId, from, to, cursor, limit);
+    }
+
+    @RequestMapping(value = "users/{userId}/appointments/version", method = RequestMethod.GET,
+            produces = {MediaType.APPLICATION_JSON_VALUE, WireFormatConfiguration.APPLICATION_SMILE_VALUE})
+    public long getUserAppointmentsVersion(@PathVariable(value = "userId") String userId) {
+
+        requireLocal(userId);
+
+        return appointmentService.getUserAppointmentsVersion(userId);
+    }
+
+    @RequestMapping(value = "users/{userId}/appointments/next", method = RequestMethod.GET,
+            produces = {MediaType.APPLICATION_JSON_VALUE, WireFormatConfiguration.APPLICATION_SMILE_VALUE})
+    public MavenAppointment getNextUserAppointment(
+            @PathVariable(value = "userId") String userId,
+            @RequestParam(value = "after") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime after) {
+
+        requireLocal(userId);
+
+        return appointmentService.getNextUserAppointment(userId, after);
+    }
+
+    @RequestMapping(value = "users/{userId}/slots/available", method = RequestMethod.GET,
+            produces = {MediaType.APPLICATION_JSON_VALUE, WireFormatConfiguration.APPLICATION_SMILE_VALUE})
+    public List<AvailableSlot> getAvailableSlots(
+            @PathVariable(value = "userId") String userId,
+            @RequestParam(value = "after") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime after,
+            @RequestParam(value = "limit") int limit) {
+
+        requireLocal(userId);
+
+        return appointmentService.getAvailableSlots(userId, after, limit);
+    }
+
+    private void requireLocal(String userId) {
+
+        if (!router.isServedLocally(userId)) {
+            throw new NotShardOwnerException();
+        }
+    }
+}
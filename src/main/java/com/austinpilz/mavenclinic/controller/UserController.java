@@ -1,22 +1,43 @@
 package com.austinpilz.mavenclinic.controller;
 
+import com.austinpilz.mavenclinic.cache.SerializedResponseCache;
+import com.austinpilz.mavenclinic.core.AppointmentPage;
+import com.austinpilz.mavenclinic.core.AvailableSlot;
 import com.austinpilz.mavenclinic.core.MavenAppointment;
 import com.austinpilz.mavenclinic.exception.NoAppointmentsFoundException;
+import com.austinpilz.mavenclinic.server.WireFormatConfiguration;
 import com.austinpilz.mavenclinic.service.AppointmentService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import lombok.AllArgsConstructor;
 import org.apache.commons.collections4.CollectionUtils;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.HandlerMapping;
 
+import javax.servlet.http.HttpServletResponse;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * This is the user controller which provides access primarily to a uniquer user's appointments with Maven Clinic.
@@ -26,12 +47,26 @@ import java.util.List;
  * there is nothing to return, there is less network overhead to return 204 than it is 200 with a semi empty body. That's
  * why I opted for 204 NO CONTENT.
  *
- * When calling an endpoint like this for potentially a large list, I would normally include filtering options like count
- * and offset, to allow us to perform pagination. Especially with working mothers and families having to plan things out,
- * a customer could have scheduled quite a few appointments into the future. Ideally this endpoint would allow us to
- * specify how many we want back, perhaps just on what day (since there can only be one), etc. so that our calling application,
- * say a UI, doesn't receive a ton of unwanted information and has to wait while the back end (database) looks it up. For
- * this example you'll see I didn't include those, but I would if this were a to scale application.
+ * When calling an endpoint like this for potentially a large list, we want filtering options to allow us to perform
+ * pagination. Especially with working mothers and families having to plan things out, a customer could have scheduled
+ * quite a few appointments into the future. The endpoint therefore accepts an optional from/to date range and a limit,
+ * and when there are more appointments than fit in the page, the X-Next-Cursor header carries the cursor to pass back
+ * for the next page. Without any of those parameters the full list is returned, as it always was. Appointments are
+ * always returned in date order.
+ *
+ * Since clients poll for appointments far more often than they change, the appointments endpoint carries a strong ETag
+ * made from the user's appointment version. A request whose If-None-Match still matches is answered 304 NOT MODIFIED
+ * from the version alone, without reading the appointments. The full list is also kept serialized in the
+ * {@link SerializedResponseCache} against that version, so a 200 for unchanged appointments is just a copy of bytes.
+ *
+ * Every endpoint also answers in Smile (see {@link WireFormatConfiguration}) to a client that accepts
+ * application/x-jackson-smile and not JSON. Only the JSON body of the full list is kept in the cache, Smile clients are
+ * services that can afford the serialization and would otherwise double what the cache holds. The Smile body of a
+ * version is a different representation to its JSON body, so its ETag carries a {@value #SMILE_ETAG_SUFFIX} suffix,
+ * and the appointments are sent with Vary: Accept so a shared cache never hands one format to a client asking for the other.
+ *
+ * The available slots endpoint lists the next times the user can actually book, so clients can offer those rather than
+ * guessing a time and finding out from a rejected booking.
  *
  * @author Austin Pilz
  */
@@ -40,7 +75,15 @@ import java.util.List;
 @AllArgsConstructor
 public class UserController {
 
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    static final String SMILE_ETAG_SUFFIX = "-smile";
+
+    // Versions start over when the application restarts, so the ETags carry an ID of this run to never match across one.
+    private static final String BOOT_ID = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+
     private final AppointmentService appointmentService;
+    private final SerializedResponseCache responseCache;
+    private final ObjectMapper objectMapper;
 
     @Operation(summary = "Retrieve user appointments.")
     @ApiResponses(value = {
@@ -50,13 +93,155 @@ public class UserController {
                             schema = @Schema(implementation = MavenAppointment.class))
             }),
             @ApiResponse(responseCode = "204", description = "No user appointments found.",
+                    content = {@Content}),
+            @ApiResponse(responseCode = "304", description = "User appointments unchanged since the If-None-Match ETag.",
+                    content = {@Content}),
+            @ApiResponse(responseCode = "400", description = "Invalid date range or page size.",
                     content = {@Content})
     })
-    @RequestMapping(value = "{userId}/appointments", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
-    public List<MavenAppointment> getUserAppointments(@PathVariable(value = "userId") String userId) {
+    @RequestMapping(value = "{userId}/appointments", method = RequestMethod.GET,
+            produces = {MediaType.APPLICATION_JSON_VALUE, WireFormatConfiguration.APPLICATION_SMILE_VALUE})
+    public ResponseEntity<?> getUserAppointments(
+            @PathVariable(value = "userId") String userId,
+            @Parameter(description = "First date to include (yyyy-MM-dd).")
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @Parameter(description = "Last date to include (yyyy-MM-dd).")
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @Parameter(description = "Maximum number of appointments to return, up to " + AppointmentService.MAX_PAGE_SIZE + ".")
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @Parameter(description = "Cursor from the X-Next-Cursor header of the previous page.")
+            @RequestParam(value = "cursor", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate cursor,
+            WebRequest request,
+            HttpServletResponse servletResponse) throws JsonProcessingException {
+
+        long version = appointmentService.getUserAppointmentsVersion(userId);
+
+        if (version < 0) {
+            // The user has never booked, so there is nothing to find.
+            throw new NoAppointmentsFoundException();
+        }
+
+        // The body depends on the format the client accepts, which the ETag and caches along the way have to tell apart.
+        boolean json = acceptsJson(request);
+        servletResponse.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+
+        if (request.checkNotModified(BOOT_ID + "-" + version + (json ? "" : SMILE_ETAG_SUFFIX))) {
+            // The client already has this version, Spring answers 304 NOT MODIFIED.
+            return null;
+        }
 
-        // Obtain the users appointments.
-        List<MavenAppointment> appointments = appointmentService.getUserAppointments(userId);
+        if (from == null && to == null && limit == null && cursor == null && json) {
+            // No paging requested, serve all of the users appointments, serialized once per version.
+            byte[] body = responseCache.get(userId, version);
+
+            if (body == null) {
+                // A booking landing after the version was read only makes this body newer than its version, which is
+                // safe, it'll just be replaced on the next request.
+                body = objectMapper.writeValueAsBytes(requireAppointments(appointmentService.getUserAppointments(userId)));
+                responseCache.put(userId, version, body);
+            }
+
+            return ResponseEntity.ok()
+                    .cacheControl(CacheControl.noCache())
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(body);
+        }
+
+        if (from == null && to == null && limit == null && cursor == null) {
+            // No paging requested by a Smile client, serve all of the users appointments.
+            return ResponseEntity.ok()
+                    .cacheControl(CacheControl.noCache())
+                    .body(requireAppointments(appointmentService.getUserAppointments(userId)));
+        }
+
+        // Obtain the requested page of the users appointments.
+        AppointmentPage page = appointmentService.getUserAppointments(userId, from, to, cursor,
+                limit == null ? AppointmentService.MAX_PAGE_SIZE : limit);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().cacheControl(CacheControl.noCache());
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor().toString());
+        }
+
+        return response.body(requireAppointments(page.getAppointments()));
+    }
+
+    @Operation(summary = "Retrieve the user's next appointment.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Next user appointment found.",
+                    content = {
+                            @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = MavenAppointment.class))
+                    }),
+            @ApiResponse(responseCode = "204", description = "No upcoming user appointment found.",
+                    content = {@Content}),
+            @ApiResponse(responseCode = "400", description = "Invalid time.",
+                    content = {@Content})
+    })
+    @RequestMapping(value = "{userId}/appointments/next", method = RequestMethod.GET,
+            produces = {MediaType.APPLICATION_JSON_VALUE, WireFormatConfiguration.APPLICATION_SMILE_VALUE})
+    public MavenAppointment getNextUserAppointment(
+            @PathVariable(value = "userId") String userId,
+            @Parameter(description = "Find the first appointment starting at or after this time, defaults to now.")
+            @RequestParam(value = "after", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime after) {
+
+        MavenAppointment appointment = appointmentService.getNextUserAppointment(userId, after == null ? LocalDateTime.now() : after);
+
+        if (appointment == null) {
+            // There is no upcoming appointment for the user.
+            throw new NoAppointmentsFoundException();
+        }
+
+        return appointment;
+    }
+
+    @Operation(summary = "Retrieve the next slots the user can book.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Bookable slots, in time order.",
+                    content = {
+                            @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    array = @ArraySchema(schema = @Schema(implementation = AvailableSlot.class)))
+                    }),
+            @ApiResponse(responseCode = "400", description = "Invalid number of slots or time.",
+                    content = {@Content})
+    })
+    @RequestMapping(value = "{userId}/slots/available", method = RequestMethod.GET,
+            produces = {MediaType.APPLICATION_JSON_VALUE, WireFormatConfiguration.APPLICATION_SMILE_VALUE})
+    public List<AvailableSlot> getAvailableSlots(
+            @PathVariable(value = "userId") String userId,
+            @Parameter(description = "Find slots starting at or after this time, defaults to now.")
+            @RequestParam(value = "after", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime after,
+            @Parameter(description = "Number of slots to return, up to " + AppointmentService.MAX_AVAILABLE_SLOTS + ".")
+            @RequestParam(value = "limit", defaultValue = "10") int limit) {
+
+        return appointmentService.getAvailableSlots(userId, after == null ? LocalDateTime.now() : after, limit);
+    }
+
+    /**
+     * Returns if JSON is among the formats the client accepts for this request, in which case it is the one served.
+     *
+     * @param request Request.
+     * @return If the client accepts JSON.
+     * @author Austin Pilz
+     */
+    @SuppressWarnings("unchecked")
+    private static boolean acceptsJson(WebRequest request) {
+
+        // Spring leaves the formats of the mapping that match the Accept header here, both if the client accepts either.
+        Set<MediaType> producible = (Set<MediaType>) request.getAttribute(HandlerMapping.PRODUCIBLE_MEDIA_TYPES_ATTRIBUTE,
+                RequestAttributes.SCOPE_REQUEST);
+
+        return producible == null || producible.contains(MediaType.APPLICATION_JSON);
+    }
+
+    /**
+     * Returns the appointments, unless there are none in which case this throws to return 204 NO CONTENT.
+     *
+     * @param appointments Appointments.
+     * @return Appointments.
+     * @author Austin Pilz
+     */
+    private List<MavenAppointment> requireAppointments(List<MavenAppointment> appointments) {
 
         if (CollectionUtils.isEmpty(appointments)) {
             // There are no appointments for the user.
@@ -66,5 +251,3 @@ public class UserController {
         return appointments;
     }
 }
-
-
@@ -0,0 +1,29 @@
+package com.austinpilz.mavenclinic.core;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * A page of a user's appointments, in date order, along with the cursor to fetch the page after it.
+ *
+ * @author Austin Pilz
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+public class AppointmentPage {
+
+    private List<MavenAppointment> appointments;
+
+    /**
+     * Cursor for the next page, or null if this is the last page. Since a user has at most one appointment per day, the
+     * cursor is simply the date of the last appointment on this page.
+     */
+    private LocalDate nextCursor;
+}
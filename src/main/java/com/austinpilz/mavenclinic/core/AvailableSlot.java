@@ -0,0 +1,23 @@
+package com.austinpilz.mavenclinic.core;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A half hour slot a user can book, on a day they don't have an appointment yet.
+ *
+ * @author Austin Pilz
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+public class AvailableSlot {
+
+    private LocalDateTime start;
+    private LocalDateTime end;
+}
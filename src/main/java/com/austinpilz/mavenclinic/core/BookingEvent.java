@@ -0,0 +1,29 @@
+package com.austinpilz.mavenclinic.core;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A booking event is an appointment accepted by the clinic, as published on the booking feed.
+ *
+ * @author Austin Pilz
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+public class BookingEvent {
+
+    /**
+     * Position of the booking in the feed, one higher than the booking published before it.
+     */
+    private long sequence;
+
+    private String userId;
+    private LocalDateTime start;
+    private LocalDateTime end;
+}
@@ -0,0 +1,30 @@
+package com.austinpilz.mavenclinic.core;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Sent on the booking feed in place of bookings a subscriber can no longer be sent, because it fell too far behind or
+ * resumed from a position the feed no longer holds. A subscriber that needs every booking catches up on the ones it
+ * missed by reading the appointments of the users it cares about.
+ *
+ * @author Austin Pilz
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+public class BookingFeedGap {
+
+    /**
+     * Sequence of the first booking missed.
+     */
+    private long missedFrom;
+
+    /**
+     * Sequence the feed carries on from, every booking in between was missed.
+     */
+    private long resumedFrom;
+}
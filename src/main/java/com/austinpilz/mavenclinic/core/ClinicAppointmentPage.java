@@ -0,0 +1,32 @@
+package com.austinpilz.mavenclinic.core;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * A page of the appointments booked clinic-wide in a time window, in start time order.
+ *
+ * @author Austin Pilz
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+public class ClinicAppointmentPage {
+
+    /**
+     * Total number of appointments in the window, across all pages.
+     */
+    private long totalCount;
+
+    private List<MavenAppointment> appointments;
+
+    /**
+     * Cursor for the next page, or null if this is the last page.
+     */
+    private String nextCursor;
+}
@@ -1,5 +1,6 @@
 package com.austinpilz.mavenclinic.core;
 
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import io.swagger.annotations.ApiModelProperty;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -8,19 +9,24 @@ import lombok.NoArgsConstructor;
 
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
 import java.time.LocalDateTime;
 
 @AllArgsConstructor
 @NoArgsConstructor
 @Data
 @Builder
+@JsonDeserialize(using = ScheduleAppointmentRequestDeserializer.class)
 public class ScheduleAppointmentRequest {
 
+    public static final int MAX_USER_ID_LENGTH = 256;
+
     @ApiModelProperty(required = true, value = "Desired appointment date & time.")
     @NotNull
     private LocalDateTime appointmentTime;
 
     @ApiModelProperty(required = true, value = "UserID requesting the appointment.")
     @NotBlank
+    @Size(max = MAX_USER_ID_LENGTH)
     private String userId;
 }
@@ -0,0 +1,147 @@
+package com.austinpilz.mavenclinic.core;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+
+/**
+ * Reads a {@link ScheduleAppointmentRequest} straight off the token stream, without going through bean introspection.
+ *
+ * The appointment time is parsed in place from the parser's character buffer when it is a plain ISO local date time
+ * ({@code yyyy-MM-ddTHH:mm}, optionally with seconds and a fraction), which is what every client sends. That skips
+ * building a string for it and the formatter machinery of the general java.time deserializer. Anything else (a zone
+ * suffix, an array form, a malformed or impossible date) is handed to the registered {@code LocalDateTime}
+ * deserializer, so it is accepted or rejected exactly as before.
+ *
+ * @author Austin Pilz
+ */
+public class ScheduleAppointmentRequestDeserializer extends StdDeserializer<ScheduleAppointmentRequest> {
+
+    private static final String APPOINTMENT_TIME = "appointmentTime";
+    private static final String USER_ID = "userId";
+
+    public ScheduleAppointmentRequestDeserializer() {
+
+        super(ScheduleAppointmentRequest.class);
+    }
+
+    @Override
+    public ScheduleAppointmentRequest deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+
+        JsonToken token = parser.currentToken();
+
+        if (token == JsonToken.START_OBJECT) {
+            token = parser.nextToken();
+        } else if (token != JsonToken.FIELD_NAME && token != JsonToken.END_OBJECT) {
+            return (ScheduleAppointmentRequest) context.handleUnexpectedToken(ScheduleAppointmentRequest.class, parser);
+        }
+
+        ScheduleAppointmentRequest request = new ScheduleAppointmentRequest();
+
+        for (; token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+            // Field names come out of the parser's symbol table, so this doesn't allocate.
+            String field = parser.currentName();
+            token = parser.nextToken();
+
+            if (APPOINTMENT_TIME.equals(field)) {
+                request.setAppointmentTime(token == JsonToken.VALUE_NULL ? null : readAppointmentTime(parser, context));
+            } else if (USER_ID.equals(field)) {
+                request.setUserId(token == JsonToken.VALUE_STRING ? parser.getText()
+                        : token == JsonToken.VALUE_NULL ? null : context.readValue(parser, String.class));
+            } else {
+                context.handleUnknownProperty(parser, this, ScheduleAppointmentRequest.class, field);
+            }
+        }
+
+        return request;
+    }
+
+    private static LocalDateTime readAppointmentTime(JsonParser parser, DeserializationContext context) throws IOException {
+
+        if (parser.currentToken() == JsonToken.VALUE_STRING) {
+            LocalDateTime time = parseIsoLocalDateTime(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+
+            if (time != null) {
+                return time;
+            }
+        }
+
+        return context.readValue(parser, LocalDateTime.class);
+    }
+
+    /**
+     * Parses {@code yyyy-MM-ddTHH:mm[:ss[.fffffffff]]}.
+     *
+     * @param chars Characters.
+     * @param offset Offset of the first character.
+     * @param length Number of characters.
+     * @return Time, or null if the characters are not in that form or are not a valid date and time.
+     * @author Austin Pilz
+     */
+    static LocalDateTime parseIsoLocalDateTime(char[] chars, int offset, int length) {
+
+        if (length < 16 || length == 17 || length == 18 || length == 20 || length > 29
+                || chars[offset + 4] != '-' || chars[offset + 7] != '-' || chars[offset + 10] != 'T' || chars[offset + 13] != ':') {
+            return null;
+        }
+
+        int year = digits(chars, offset, 4);
+        int month = digits(chars, offset + 5, 2);
+        int day = digits(chars, offset + 8, 2);
+        int hour = digits(chars, offset + 11, 2);
+        int minute = digits(chars, offset + 14, 2);
+        int second = 0;
+        int nano = 0;
+
+        if (length > 16) {
+            if (chars[offset + 16] != ':') {
+                return null;
+            }
+            second = digits(chars, offset + 17, 2);
+        }
+
+        if (length > 19) {
+            if (chars[offset + 19] != '.') {
+                return null;
+            }
+            int fractionDigits = length - 20;
+            nano = digits(chars, offset + 20, fractionDigits);
+            for (int i = fractionDigits; i < 9 && nano >= 0; i++) {
+                nano *= 10;
+            }
+        }
+
+        if ((year | month | day | hour | minute | second | nano) < 0) {
+            return null;
+        }
+
+        try {
+            return LocalDateTime.of(year, month, day, hour, minute, second, nano);
+        } catch (DateTimeException e) {
+            // Out of range, let the standard deserializer report it.
+            return null;
+        }
+    }
+
+    private static int digits(char[] chars, int offset, int count) {
+
+        int value = 0;
+
+        for (int i = 0; i < count; i++) {
+            int digit = chars[offset + i] - '0';
+
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+
+            value = value * 10 + digit;
+        }
+
+        return value;
+    }
+}
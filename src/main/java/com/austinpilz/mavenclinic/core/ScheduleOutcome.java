@@ -0,0 +1,52 @@
+package com.austinpilz.mavenclinic.core;
+
+/**
+ * The outcome of an appointment schedule request, used to tell the reasons a booking was refused apart without having
+ * to look at the status message.
+ *
+ * @author Austin Pilz
+ */
+public enum ScheduleOutcome {
+
+    ACCEPTED("accepted"),
+    DUPLICATE_DAY("duplicate-day"),
+    INVALID_TIME("invalid-time"),
+    INVALID_REQUEST("invalid-request");
+
+    private final String tag;
+
+    ScheduleOutcome(String tag) {
+
+        this.tag = tag;
+    }
+
+    /**
+     * Returns the value used for this outcome when tagging metrics.
+     *
+     * @return Tag value.
+     * @author Austin Pilz
+     */
+    public String getTag() {
+
+        return tag;
+    }
+
+    /**
+     * Returns the outcome with the provided tag.
+     *
+     * @param tag Tag value.
+     * @return Outcome.
+     * @throws IllegalArgumentException If no outcome has the tag.
+     * @author Austin Pilz
+     */
+    public static ScheduleOutcome fromTag(String tag) {
+
+        for (ScheduleOutcome outcome : values()) {
+            if (outcome.tag.equals(tag)) {
+                return outcome;
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown schedule outcome " + tag + ".");
+    }
+}
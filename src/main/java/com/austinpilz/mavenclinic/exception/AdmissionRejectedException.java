@@ -0,0 +1,17 @@
+package com.austinpilz.mavenclinic.exception;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@Getter
+@ResponseStatus(value = HttpStatus.TOO_MANY_REQUESTS, reason = "Too many booking requests, retry later.")
+public class AdmissionRejectedException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public AdmissionRejectedException(long retryAfterSeconds) {
+
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -0,0 +1,8 @@
+package com.austinpilz.mavenclinic.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.PAYLOAD_TOO_LARGE, reason = "Batch exceeds the maximum number of appointments.")
+public class BatchTooLargeException extends RuntimeException {
+}
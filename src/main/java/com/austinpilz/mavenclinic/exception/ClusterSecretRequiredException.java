@@ -0,0 +1,8 @@
+package com.austinpilz.mavenclinic.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.UNAUTHORIZED, reason = "Cluster secret missing or wrong.")
+public class ClusterSecretRequiredException extends RuntimeException {
+}
@@ -0,0 +1,13 @@
+package com.austinpilz.mavenclinic.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.BAD_GATEWAY, reason = "Node owning the user could not be reached.")
+public class ClusterUnavailableException extends RuntimeException {
+
+    public ClusterUnavailableException(Throwable cause) {
+
+        super(cause);
+    }
+}
@@ -0,0 +1,8 @@
+package com.austinpilz.mavenclinic.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.FORBIDDEN, reason = "Node asking for the user would not own them.")
+public class HandOffRefusedException extends RuntimeException {
+}
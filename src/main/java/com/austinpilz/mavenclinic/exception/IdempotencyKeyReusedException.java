@@ -0,0 +1,8 @@
+package com.austinpilz.mavenclinic.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.UNPROCESSABLE_ENTITY, reason = "Idempotency-Key was already used for a different appointment.")
+public class IdempotencyKeyReusedException extends RuntimeException {
+}
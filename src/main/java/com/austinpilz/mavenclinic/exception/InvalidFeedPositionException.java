@@ -0,0 +1,8 @@
+package com.austinpilz.mavenclinic.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.BAD_REQUEST, reason = "Last-Event-ID is not a booking feed sequence.")
+public class InvalidFeedPositionException extends RuntimeException {
+}
@@ -0,0 +1,162 @@
+package com.austinpilz.mavenclinic.feed;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, in-memory log of accepted bookings, each numbered with a sequence one higher than the booking before it.
+ * Any number of threads append to it and any number of readers read it, each from their own position, without locks.
+ *
+ * Reviewer Note: Unlike the pipeline's {@link com.austinpilz.mavenclinic.pipeline.RingBuffer}, appending never waits
+ * for readers. The log keeps the latest {@code capacity} bookings and overwrites the oldest, so a reader that falls
+ * that far behind finds its position gone rather than holding up the bookings. A writer only ever replaces an older
+ * entry in its slot, so a writer that was slow to store its entry can't overwrite one from a lap ahead of it.
+ *
+ * @author Austin Pilz
+ */
+public class BookingEventLog {
+
+    /**
+     * Returned by {@link #read(long, Entry[])} when the position asked for has already been overwritten.
+     */
+    public static final int LAPPED = -1;
+
+    private final AtomicReferenceArray<Entry> entries;
+    private final int mask;
+    private final long firstSequence;
+    private final AtomicLong claimed;
+
+    /**
+     * One booking in the log.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static final class Entry {
+
+        private final long sequence;
+        private final String userId;
+        private final int epochDay;
+        private final int slot;
+    }
+
+    /**
+     * Creates an empty log.
+     *
+     * @param capacity Number of bookings it keeps, a power of two.
+     * @param firstSequence Sequence of the first booking appended.
+     * @author Austin Pilz
+     */
+    public BookingEventLog(int capacity, long firstSequence) {
+
+        if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Booking event log capacity must be a power of two.");
+        }
+
+        this.entries = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+        this.firstSequence = firstSequence;
+        this.claimed = new AtomicLong(firstSequence);
+    }
+
+    /**
+     * Appends a booking to the log. Safe to call from any thread, and never waits.
+     *
+     * @param userId User ID.
+     * @param epochDay Epoch day of the appointment.
+     * @param slot Half hour slot of the day the appointment starts in.
+     * @return Sequence of the booking.
+     * @author Austin Pilz
+     */
+    public long append(String userId, int epochDay, int slot) {
+
+        long sequence = claimed.getAndIncrement();
+        Entry entry = new Entry(sequence, userId, epochDay, slot);
+
+        // The volatile write is what hands the entry over to the readers.
+        entries.accumulateAndGet((int) sequence & mask, entry,
+                (current, appended) -> current == null || current.sequence < appended.sequence ? appended : current);
+
+        return sequence;
+    }
+
+    /**
+     * Copies the bookings from the provided sequence on into the provided array, oldest first, up to its length. Reading
+     * stops at the first booking not yet appended, so bookings always come out in sequence order. Safe to call from any
+     * thread.
+     *
+     * @param from Sequence of the first booking to read.
+     * @param into Array to copy the bookings into.
+     * @return Number of bookings copied, or {@link #LAPPED} if the booking at {@code from} was already overwritten.
+     * @author Austin Pilz
+     */
+    public int read(long from, Entry[] into) {
+
+        int count = 0;
+
+        while (count < into.length) {
+            long sequence = from + count;
+            Entry entry = entries.get((int) sequence & mask);
+
+            if (entry == null || entry.sequence < sequence) {
+                // Not appended yet.
+                break;
+            }
+
+            if (entry.sequence > sequence) {
+                // Overwritten. Past the first booking the reader can still hand over what it has and find out next read.
+                return count == 0 ? LAPPED : count;
+            }
+
+            into[count++] = entry;
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns the sequence the next booking appended will get.
+     *
+     * @return Next sequence.
+     * @author Austin Pilz
+     */
+    public long getNextSequence() {
+
+        return claimed.get();
+    }
+
+    /**
+     * Returns the sequence the first booking appended got.
+     *
+     * @return First sequence.
+     * @author Austin Pilz
+     */
+    public long getFirstSequence() {
+
+        return firstSequence;
+    }
+
+    /**
+     * Returns the sequence of the oldest booking the log may still hold. A reader that was lapped picks up from here.
+     *
+     * @return Oldest sequence.
+     * @author Austin Pilz
+     */
+    public long getOldestSequence() {
+
+        return Math.max(firstSequence, claimed.get() - entries.length());
+    }
+
+    /**
+     * Returns the number of bookings the log keeps.
+     *
+     * @return Capacity.
+     * @author Austin Pilz
+     */
+    public int getCapacity() {
+
+        return entries.length();
+    }
+}
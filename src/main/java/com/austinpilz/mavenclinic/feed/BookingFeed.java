@@ -0,0 +1,334 @@
+package com.austinpilz.mavenclinic.feed;
+
+import com.austinpilz.mavenclinic.core.AppointmentSlot;
+import com.austinpilz.mavenclinic.core.BookingEvent;
+import com.austinpilz.mavenclinic.core.BookingFeedGap;
+import com.austinpilz.mavenclinic.exception.TooManySubscribersException;
+import com.austinpilz.mavenclinic.manager.AppointmentCommitListener;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The Booking Feed publishes every booking the store accepts to a {@link BookingEventLog} and streams the log to its
+ * subscribers as Server-Sent Events, so downstream systems learn about new bookings without polling every user.
+ *
+ * Each booking is sent as a {@value #BOOKING_EVENT} event whose ID is its sequence. A subscriber resumes where it left
+ * off by passing the last ID it saw, as browsers do with Last-Event-ID when they reconnect. A subscriber that falls
+ * further behind than the log holds, or resumes from a booking it no longer holds, is sent a {@value #GAP_EVENT} event
+ * saying which bookings it missed and carries on from the oldest booking still held.
+ *
+ * Reviewer Note: Publishing is an append to the log and, only if a subscriber is idle, a wake up. Each subscriber is
+ * streamed by its own thread, reading the log from its own position, so a slow subscriber only ever blocks its own
+ * thread on its own connection and is dropped behind by the log rather than holding up bookings or the other subscribers.
+ *
+ * Sequences start from the time the feed started, in microseconds, rather than from 0. A restarted node then never
+ * reuses the sequences it handed out before, and a subscriber resuming from one of those is sent a gap instead.
+ *
+ * Bookings are published as the store commits them, which for a batch of the commit pipeline is once the batch has been
+ * committed, so a booking failed by its batch is never published. Bookings restored on startup or imported from another
+ * node of a cluster were published when they were first booked and aren't published again, and each node publishes only
+ * the bookings of the users it owns.
+ *
+ * @author Austin Pilz
+ */
+@Slf4j
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE)
+@ConditionalOnProperty(prefix = "maven.feed", name = "enabled", havingValue = "true")
+public class BookingFeed implements AppointmentCommitListener {
+
+    static final String BOOKING_EVENT = "booking";
+    static final String GAP_EVENT = "gap";
+
+    // How long an idle subscriber sleeps between checks, a booking published in the meantime wakes it straight away.
+    private static final long IDLE_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final FeedProperties properties;
+    private final BookingEventLog events;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger idleSubscribers = new AtomicInteger();
+    private final AtomicInteger subscriberIds = new AtomicInteger();
+    private final Counter gaps;
+
+    // Set on a thread while it commits a batch, whose bookings are held back until the batch is committed.
+    private final ThreadLocal<List<Pending>> batch = new ThreadLocal<>();
+
+    private volatile boolean running = true;
+
+    /**
+     * A booking committed in a batch that hasn't been committed yet.
+     */
+    @AllArgsConstructor
+    private static final class Pending {
+
+        private final String userId;
+        private final int epochDay;
+        private final int slot;
+    }
+
+    public BookingFeed(FeedProperties properties, MeterRegistry registry) {
+
+        if (properties.getMaxSubscribers() < 1 || properties.getMaxBatchSize() < 1) {
+            throw new IllegalArgumentException("The booking feed needs at least one subscriber and a batch of at least one.");
+        }
+
+        this.properties = properties;
+        this.events = new BookingEventLog(properties.getCapacity(), TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis()));
+
+        FunctionCounter.builder("maven.feed.published", events, e -> e.getNextSequence() - e.getFirstSequence())
+                .description("Bookings published to the booking feed.")
+                .register(registry);
+        Gauge.builder("maven.feed.subscribers", subscribers, Set::size)
+                .description("Subscribers streaming the booking feed.")
+                .register(registry);
+        gaps = Counter.builder("maven.feed.gaps")
+                .description("Gaps sent to subscribers that missed bookings.")
+                .register(registry);
+    }
+
+    @Override
+    public void onAppointmentCommitted(String userId, int epochDay, int slot) {
+
+        List<Pending> pending = batch.get();
+
+        if (pending != null) {
+            pending.add(new Pending(userId, epochDay, slot));
+        } else {
+            publish(userId, epochDay, slot);
+        }
+    }
+
+    @Override
+    public void onAppointmentImported(String userId, int epochDay, int slot) {
+
+        // Published by the node it was booked on.
+    }
+
+    @Override
+    public void onBatchStarted() {
+
+        // Replaces whatever a batch that failed to commit left behind.
+        batch.set(new ArrayList<>());
+    }
+
+    @Override
+    public void onBatchCommitted() {
+
+        List<Pending> pending = batch.get();
+        batch.remove();
+
+        if (pending != null) {
+            for (Pending booking : pending) {
+                publish(booking.userId, booking.epochDay, booking.slot);
+            }
+        }
+    }
+
+    private void publish(String userId, int epochDay, int slot) {
+
+        events.append(userId, epochDay, slot);
+
+        if (idleSubscribers.get() > 0) {
+            subscribers.forEach(Subscriber::wake);
+        }
+    }
+
+    /**
+     * Subscribes to the feed, starting from the provided sequence.
+     *
+     * @param from Sequence of the first booking to send, or null for only the bookings published from now on.
+     * @return Emitter streaming the feed.
+     * @throws TooManySubscribersException If the feed already has as many subscribers as it allows.
+     * @author Austin Pilz
+     */
+    public synchronized SseEmitter subscribe(Long from) {
+
+        if (!running) {
+            throw new IllegalStateException("The booking feed is closed.");
+        }
+
+        if (subscribers.size() >= properties.getMaxSubscribers()) {
+            throw new TooManySubscribersException();
+        }
+
+        // A position past the end of the feed wasn't handed out by it, start from the end.
+        long next = events.getNextSequence();
+        long position = from == null || from > next ? next : from;
+
+        SseEmitter emitter = new SseEmitter(properties.getStreamTimeout().toMillis());
+        Subscriber subscriber = new Subscriber(emitter, position);
+
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(error -> subscriber.close());
+
+        subscribers.add(subscriber);
+        subscriber.thread.start();
+
+        return emitter;
+    }
+
+    /**
+     * Returns the sequence the next booking published will get.
+     *
+     * @return Next sequence.
+     * @author Austin Pilz
+     */
+    public long getNextSequence() {
+
+        return events.getNextSequence();
+    }
+
+    /**
+     * Returns the number of subscribers streaming the feed.
+     *
+     * @return Subscriber count.
+     * @author Austin Pilz
+     */
+    public int getSubscriberCount() {
+
+        return subscribers.size();
+    }
+
+    /**
+     * Stops streaming the feed and ends every subscription.
+     *
+     * @author Austin Pilz
+     */
+    @PreDestroy
+    public synchronized void close() {
+
+        running = false;
+        subscribers.forEach(Subscriber::close);
+    }
+
+    private final class Subscriber implements Runnable {
+
+        private final SseEmitter emitter;
+        private final Thread thread;
+        private long position;
+        private volatile boolean idle;
+        private volatile boolean closed;
+
+        private Subscriber(SseEmitter emitter, long position) {
+
+            this.emitter = emitter;
+            this.position = position;
+            this.thread = new Thread(this, "booking-feed-" + subscriberIds.incrementAndGet());
+            this.thread.setDaemon(true);
+        }
+
+        private void wake() {
+
+            if (idle) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        private void close() {
+
+            closed = true;
+            LockSupport.unpark(thread);
+        }
+
+        @Override
+        public void run() {
+
+            BookingEventLog.Entry[] entries = new BookingEventLog.Entry[properties.getMaxBatchSize()];
+            long heartbeatNanos = properties.getHeartbeatInterval().toNanos();
+            long lastSentAt = System.nanoTime();
+
+            try {
+                // Anything before the oldest booking held is gone already.
+                if (position < events.getOldestSequence()) {
+                    sendGap(events.getOldestSequence());
+                }
+
+                while (running && !closed) {
+                    int count = events.read(position, entries);
+
+                    if (count == BookingEventLog.LAPPED) {
+                        sendGap(events.getOldestSequence());
+                        continue;
+                    }
+
+                    if (count > 0) {
+                        // Blocks for as long as the subscriber takes to read, the log carries on without it.
+                        for (int i = 0; i < count; i++) {
+                            emitter.send(SseEmitter.event()
+                                    .id(Long.toString(entries[i].getSequence()))
+                                    .name(BOOKING_EVENT)
+                                    .data(toEvent(entries[i]), MediaType.APPLICATION_JSON));
+                            entries[i] = null;
+                        }
+
+                        position += count;
+                        lastSentAt = System.nanoTime();
+                        continue;
+                    }
+
+                    if (System.nanoTime() - lastSentAt >= heartbeatNanos) {
+                        emitter.send(SseEmitter.event().comment("heartbeat"));
+                        lastSentAt = System.nanoTime();
+                    }
+
+                    // Announce the subscriber is going idle before the last look, so a booking published after it wakes it.
+                    idle = true;
+                    idleSubscribers.incrementAndGet();
+                    if (running && !closed && events.getNextSequence() <= position) {
+                        LockSupport.parkNanos(Math.min(IDLE_PARK_NANOS, heartbeatNanos));
+                    }
+                    idleSubscribers.decrementAndGet();
+                    idle = false;
+                }
+
+                emitter.complete();
+            } catch (IOException | IllegalStateException e) {
+                // The subscriber went away, or its stream timed out.
+                log.debug("Booking feed subscriber stopped at {}.", position, e);
+            } finally {
+                subscribers.remove(this);
+            }
+        }
+
+        private void sendGap(long resumedFrom) throws IOException {
+
+            emitter.send(SseEmitter.event()
+                    .name(GAP_EVENT)
+                    .data(BookingFeedGap.builder().missedFrom(position).resumedFrom(resumedFrom).build(), MediaType.APPLICATION_JSON));
+
+            position = resumedFrom;
+            gaps.increment();
+        }
+
+        private BookingEvent toEvent(BookingEventLog.Entry entry) {
+
+            return BookingEvent.builder()
+                    .sequence(entry.getSequence())
+                    .userId(entry.getUserId())
+                    .start(AppointmentSlot.startOf(entry.getEpochDay(), entry.getSlot()))
+                    .end(AppointmentSlot.startOf(entry.getEpochDay(), entry.getSlot()).plusMinutes(AppointmentSlot.MINUTES_PER_SLOT))
+                    .build();
+        }
+    }
+}
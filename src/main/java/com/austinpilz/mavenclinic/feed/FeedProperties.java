@@ -0,0 +1,50 @@
+package com.austinpilz.mavenclinic.feed;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Configuration for the booking feed, bound from {@code maven.feed}.
+ *
+ * @author Austin Pilz
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "maven.feed")
+public class FeedProperties {
+
+    /**
+     * If accepted bookings are published to the booking feed.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Bookings the feed keeps for subscribers to catch up on, a power of two. A subscriber further behind than this
+     * misses bookings.
+     */
+    private int capacity = 65536;
+
+    /**
+     * Most subscribers streaming the feed at once, each holds a thread while subscribed.
+     */
+    private int maxSubscribers = 16;
+
+    /**
+     * Most bookings sent to a subscriber in one go before checking whether it has gone away.
+     */
+    private int maxBatchSize = 256;
+
+    /**
+     * How often an idle subscriber is sent a comment, so proxies don't close its connection and it notices a dead one.
+     */
+    private Duration heartbeatInterval = Duration.ofSeconds(15);
+
+    /**
+     * How long a subscription lasts before the stream is closed. The client reconnects with Last-Event-ID and carries on
+     * where it left off.
+     */
+    private Duration streamTimeout = Duration.ofMinutes(30);
+}
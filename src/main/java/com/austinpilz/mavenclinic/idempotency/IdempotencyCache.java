@@ -0,0 +1,221 @@
+package com.austinpilz.mavenclinic.idempotency;
+
+import com.austinpilz.mavenclinic.core.ScheduleAppointmentRequest;
+import com.austinpilz.mavenclinic.core.ScheduleAppointmentResponse;
+import com.austinpilz.mavenclinic.exception.IdempotencyKeyReusedException;
+import com.austinpilz.mavenclinic.exception.InvalidIdempotencyKeyException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * The Idempotency Cache remembers the outcome of each appointment request sent with an Idempotency-Key, so a client
+ * retrying after a timeout gets the original outcome back (a 201 stays a 201) instead of having the booking run again
+ * and reported as a duplicate day.
+ *
+ * Keys are scoped to the user, and a key can only be replayed for the same appointment time. Reusing a key for a
+ * different appointment is rejected rather than silently returning an outcome for a request that was never made.
+ *
+ * Reviewer Note: The first request with a key installs its entry before it runs, so a retry arriving while the original
+ * is still being processed waits for that outcome rather than racing it. Every entry lives for the same TTL, so the order
+ * they were added in is also the order they expire in, and a queue in that order lets each insert drop the expired (or,
+ * past the size cap, the oldest) entries from its head in O(1) without a background sweep. A request that fails with an
+ * exception is not remembered, so it can be retried.
+ *
+ * @author Austin Pilz
+ */
+@Component
+public class IdempotencyCache {
+
+    public static final int MAX_KEY_LENGTH = 255;
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Queue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final Counter hits;
+    private final Counter misses;
+
+    /**
+     * The outcome of a request, and whether it is a replay of an earlier one.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static final class Result {
+
+        private final ScheduleAppointmentResponse response;
+        private final boolean replayed;
+    }
+
+    private static final class Entry {
+
+        private final String key;
+        private final LocalDateTime appointmentTime;
+        private final long expiresAtNanos;
+        private final CompletableFuture<ScheduleAppointmentResponse> response = new CompletableFuture<>();
+
+        private Entry(String key, LocalDateTime appointmentTime, long expiresAtNanos) {
+
+            this.key = key;
+            this.appointmentTime = appointmentTime;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        private boolean isExpired(long nowNanos) {
+
+            return nowNanos - expiresAtNanos >= 0;
+        }
+    }
+
+    public IdempotencyCache(IdempotencyProperties properties, MeterRegistry registry) {
+
+        this.ttlNanos = properties.getTtl().toNanos();
+        this.maxEntries = properties.getMaxEntries();
+        this.hits = Counter.builder("maven.idempotency.requests")
+                .description("Requests carrying an Idempotency-Key, by whether they replayed an earlier outcome.")
+                .tag("result", "hit")
+                .register(registry);
+        this.misses = Counter.builder("maven.idempotency.requests")
+                .description("Requests carrying an Idempotency-Key, by whether they replayed an earlier outcome.")
+                .tag("result", "miss")
+                .register(registry);
+
+        Gauge.builder("maven.idempotency.cache.size", entries, ConcurrentMap::size)
+                .description("Outcomes held for Idempotency-Key replays.")
+                .register(registry);
+
+        Gauge.builder("maven.idempotency.cache.hit.ratio", this, IdempotencyCache::getHitRatio)
+                .description("Share of Idempotency-Key requests answered with an earlier outcome.")
+                .register(registry);
+    }
+
+    /**
+     * Returns the outcome previously recorded for the provided key, or runs the request and records its outcome if there
+     * is none.
+     *
+     * @param idempotencyKey Idempotency-Key sent with the request.
+     * @param request Schedule Appointment Request.
+     * @param action Runs the request.
+     * @return Outcome, and whether it was replayed.
+     * @throws InvalidIdempotencyKeyException If the key is empty or too long.
+     * @throws IdempotencyKeyReusedException If the key was already used for a different appointment time.
+     * @author Austin Pilz
+     */
+    public Result execute(String idempotencyKey, ScheduleAppointmentRequest request, Supplier<ScheduleAppointmentResponse> action) {
+
+        if (idempotencyKey.isEmpty() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new InvalidIdempotencyKeyException();
+        }
+
+        long now = System.nanoTime();
+        String key = request.getUserId() + '\n' + idempotencyKey;
+        Entry fresh = new Entry(key, request.getAppointmentTime(), now + ttlNanos);
+
+        // Install our entry unless a live one is already there.
+        Entry current = entries.merge(key, fresh, (existing, candidate) -> existing.isExpired(now) ? candidate : existing);
+
+        if (current != fresh) {
+            if (!Objects.equals(current.appointmentTime, request.getAppointmentTime())) {
+                throw new IdempotencyKeyReusedException();
+            }
+
+            hits.increment();
+
+            return new Result(await(current), true);
+        }
+
+        misses.increment();
+        insertionOrder.add(fresh);
+        queued.incrementAndGet();
+        evict(now);
+
+        ScheduleAppointmentResponse response;
+        try {
+            response = action.get();
+        } catch (RuntimeException e) {
+            // Forget the attempt so it can be retried, and pass the failure on to any retry already waiting on it.
+            entries.remove(key, fresh);
+            fresh.response.completeExceptionally(e);
+            throw e;
+        }
+
+        fresh.response.complete(response);
+
+        return new Result(response, false);
+    }
+
+    /**
+     * Returns the number of outcomes held.
+     *
+     * @return Number of entries.
+     * @author Austin Pilz
+     */
+    public int size() {
+
+        return entries.size();
+    }
+
+    /**
+     * Returns the share of requests that replayed an earlier outcome.
+     *
+     * @return Hit ratio between 0 and 1, or 0 before any request.
+     * @author Austin Pilz
+     */
+    public double getHitRatio() {
+
+        double hitCount = hits.count();
+        double total = hitCount + misses.count();
+
+        return total == 0 ? 0 : hitCount / total;
+    }
+
+    private static ScheduleAppointmentResponse await(Entry entry) {
+
+        try {
+            return entry.response.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private void evict(long now) {
+
+        // One thread evicting at a time is enough, the others carry on.
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+
+        try {
+            // The queue is what's bounded, since it also holds entries already replaced or forgotten, and every live
+            // entry is in it.
+            Entry oldest;
+            while ((oldest = insertionOrder.peek()) != null && (oldest.isExpired(now) || queued.get() > maxEntries)) {
+                insertionOrder.poll();
+                queued.decrementAndGet();
+                entries.remove(oldest.key, oldest);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+}
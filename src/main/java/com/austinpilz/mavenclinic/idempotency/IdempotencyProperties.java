@@ -0,0 +1,28 @@
+package com.austinpilz.mavenclinic.idempotency;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Configuration for the Idempotency-Key support of POST /appointments, bound from {@code maven.idempotency}.
+ *
+ * @author Austin Pilz
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "maven.idempotency")
+public class IdempotencyProperties {
+
+    /**
+     * How long the outcome of a request is kept for retries carrying the same key.
+     */
+    private Duration ttl = Duration.ofHours(24);
+
+    /**
+     * Maximum number of outcomes kept. The oldest are dropped beyond this, even if they haven't expired.
+     */
+    private int maxEntries = 100_000;
+}
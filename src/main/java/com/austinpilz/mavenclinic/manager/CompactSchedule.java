@@ -0,0 +1,367 @@
+package com.austinpilz.mavenclinic.manager;
+
+import com.austinpilz.mavenclinic.core.AppointmentSlot;
+
+import java.util.Arrays;
+
+/**
+ * The Compact Schedule is the memory-compact representation of one user's appointments: a sorted array of epoch days
+ * with a parallel array holding the half hour slot each appointment starts in. A booking costs 5 bytes (plus growth
+ * slack), compared to the map entry, {@code LocalDate} key, {@code MavenAppointment} and its two {@code LocalDateTime}s
+ * it used to take.
+ *
+ * Reviewer Note: Keeping the days sorted gives binary search for the one appointment per day check, and bookings are
+ * nearly always made for upcoming days so inserts land at (or near) the end of the array and rarely shift anything.
+ *
+ * A schedule that hasn't been used for a while can be frozen into a varint encoded form of about 2 bytes per booking
+ * with no growth slack, and is thawed back into the arrays the next time it is used. See {@link #freeze()}.
+ *
+ * This class is not thread safe, the owning {@link UserAppointmentManager} guards it.
+ *
+ * @author Austin Pilz
+ */
+final class CompactSchedule {
+
+    private static final int[] NO_DAYS = new int[0];
+    private static final byte[] NO_SLOTS = new byte[0];
+    private static final byte[] NO_BYTES = new byte[0];
+    private static final int INITIAL_CAPACITY = 2;
+
+    // Object header plus the two array references and the size, and each array's header.
+    private static final long FIXED_BYTES = 16 + 4 + 4 + 4 + 16 + 16;
+
+    private int[] epochDays = NO_DAYS;
+    private byte[] slots = NO_SLOTS;
+    private int size;
+    private long version;
+    private byte[] frozen;
+    private long lastAccessNanos = System.nanoTime();
+
+    /**
+     * Returns the index of the appointment on the provided day, or a negative value if there is none.
+     *
+     * @param epochDay Epoch day.
+     * @return Index, or {@code -(insertion point) - 1} if the day is not booked.
+     * @author Austin Pilz
+     */
+    int indexOf(int epochDay) {
+
+        return Arrays.binarySearch(epochDays, 0, size, epochDay);
+    }
+
+    /**
+     * Returns the index of the first appointment on or after the provided day, which is {@link #size()} if there is none.
+     *
+     * @param epochDay Epoch day.
+     * @return Index.
+     * @author Austin Pilz
+     */
+    int firstIndexOnOrAfter(int epochDay) {
+
+        int index = indexOf(epochDay);
+
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * Returns if an appointment is booked on the provided day.
+     *
+     * @param epochDay Epoch day.
+     * @return If the day is booked.
+     * @author Austin Pilz
+     */
+    boolean contains(int epochDay) {
+
+        return indexOf(epochDay) >= 0;
+    }
+
+    /**
+     * Returns the first day on or after the provided day that has no appointment.
+     *
+     * Reviewer Note: Since the days are distinct and sorted, {@code epochDays[i] - i} never decreases and stays the same
+     * across a run of back to back booked days, so the end of the run the provided day falls in is found with a binary
+     * search on it rather than by stepping through the run a day at a time.
+     *
+     * @param epochDay Epoch day.
+     * @return First free epoch day.
+     * @author Austin Pilz
+     */
+    int nextFreeDay(int epochDay) {
+
+        int index = indexOf(epochDay);
+
+        if (index < 0) {
+            return epochDay;
+        }
+
+        long run = (long) epochDays[index] - index;
+        int low = index;
+        int high = size - 1;
+
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+
+            if ((long) epochDays[mid] - mid == run) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        return epochDays[low] + 1;
+    }
+
+    /**
+     * Books the provided slot on the provided day, unless that day is already booked.
+     *
+     * @param epochDay Epoch day.
+     * @param slot Half hour slot.
+     * @return If the appointment was added.
+     * @author Austin Pilz
+     */
+    boolean insert(int epochDay, int slot) {
+
+        int index = indexOf(epochDay);
+
+        if (index >= 0) {
+            return false;
+        }
+
+        index = -index - 1;
+
+        if (size == epochDays.length) {
+            int capacity = Math.max(INITIAL_CAPACITY, size + (size >> 1));
+            epochDays = Arrays.copyOf(epochDays, capacity);
+            slots = Arrays.copyOf(slots, capacity);
+        }
+
+        if (index < size) {
+            System.arraycopy(epochDays, index, epochDays, index + 1, size - index);
+            System.arraycopy(slots, index, slots, index + 1, size - index);
+        }
+
+        epochDays[index] = epochDay;
+        slots[index] = (byte) slot;
+        size++;
+        version++;
+
+        return true;
+    }
+
+    /**
+     * Removes the appointment on the provided day, if it is in the provided slot.
+     *
+     * @param epochDay Epoch day.
+     * @param slot Half hour slot.
+     * @return If the appointment was removed.
+     * @author Austin Pilz
+     */
+    boolean remove(int epochDay, int slot) {
+
+        int index = indexOf(epochDay);
+
+        if (index < 0 || slots[index] != (byte) slot) {
+            return false;
+        }
+
+        System.arraycopy(epochDays, index + 1, epochDays, index, size - index - 1);
+        System.arraycopy(slots, index + 1, slots, index, size - index - 1);
+        size--;
+        version++;
+
+        return true;
+    }
+
+    int size() {
+
+        return size;
+    }
+
+    int epochDayAt(int index) {
+
+        return epochDays[index];
+    }
+
+    int slotAt(int index) {
+
+        return slots[index];
+    }
+
+    int[] epochDays() {
+
+        return epochDays;
+    }
+
+    byte[] slots() {
+
+        return slots;
+    }
+
+    /**
+     * Returns an estimate of the heap this schedule occupies, in bytes.
+     *
+     * @return Estimated bytes.
+     * @author Austin Pilz
+     */
+    long estimatedBytes() {
+
+        if (frozen != null) {
+            return FIXED_BYTES + 16 + frozen.length;
+        }
+
+        return FIXED_BYTES + (long) epochDays.length * Integer.BYTES + slots.length;
+    }
+
+    /**
+     * Records that the schedule is being used now.
+     *
+     * @param nanos Current {@link System#nanoTime()}.
+     * @author Austin Pilz
+     */
+    void touch(long nanos) {
+
+        lastAccessNanos = nanos;
+    }
+
+    /**
+     * Returns the version of the schedule, which goes up by one with every appointment inserted or removed and is kept
+     * through freezing and thawing.
+     *
+     * @return Version.
+     * @author Austin Pilz
+     */
+    long version() {
+
+        return version;
+    }
+
+    long lastAccessNanos() {
+
+        return lastAccessNanos;
+    }
+
+    boolean isFrozen() {
+
+        return frozen != null;
+    }
+
+    /**
+     * Replaces the arrays with the frozen encoding and releases them. The size is kept, so the schedule can still report
+     * how many appointments it holds without being thawed.
+     *
+     * Reviewer Note: The first day is written as a zig-zag varint, then each appointment after it as a single varint of
+     * {@code (days since the previous appointment - 1) * 48 + slot}. Bookings a few days apart take 1 or 2 bytes each.
+     *
+     * @author Austin Pilz
+     */
+    void freeze() {
+
+        if (frozen != null) {
+            return;
+        }
+
+        if (size == 0) {
+            frozen = NO_BYTES;
+        } else {
+            // Worst case is 5 bytes for the first day plus 6 for each appointment, trimmed once the real length is known.
+            byte[] buffer = new byte[5 + 6 * size];
+            int position = writeVarLong(buffer, 0, ((epochDays[0] << 1) ^ (epochDays[0] >> 31)) & 0xFFFFFFFFL);
+            buffer[position++] = slots[0];
+
+            for (int i = 1; i < size; i++) {
+                long gap = (long) epochDays[i] - epochDays[i - 1] - 1;
+                position = writeVarLong(buffer, position, gap * AppointmentSlot.SLOTS_PER_DAY + slots[i]);
+            }
+
+            frozen = Arrays.copyOf(buffer, position);
+        }
+
+        epochDays = NO_DAYS;
+        slots = NO_SLOTS;
+    }
+
+    /**
+     * Decodes the frozen form back into the arrays, sized exactly to the appointments held. Does nothing if the schedule
+     * is not frozen.
+     *
+     * @author Austin Pilz
+     */
+    void thaw() {
+
+        if (frozen == null) {
+            return;
+        }
+
+        int[] days = new int[size];
+        byte[] daySlots = new byte[size];
+        int[] cursor = new int[1];
+
+        if (size > 0) {
+            long zigZag = readVarLong(frozen, cursor);
+            days[0] = (int) (zigZag >>> 1) ^ -(int) (zigZag & 1);
+            daySlots[0] = frozen[cursor[0]++];
+
+            for (int i = 1; i < size; i++) {
+                long value = readVarLong(frozen, cursor);
+                days[i] = (int) (days[i - 1] + 1 + value / AppointmentSlot.SLOTS_PER_DAY);
+                daySlots[i] = (byte) (value % AppointmentSlot.SLOTS_PER_DAY);
+            }
+        }
+
+        epochDays = days;
+        slots = daySlots;
+        frozen = null;
+    }
+
+    /**
+     * Returns a schedule that can be read without changing this one: this schedule if it isn't frozen, otherwise a thawed
+     * copy of it. Used by bulk reads (exports, snapshots) so walking the store doesn't thaw every idle user.
+     *
+     * @return Readable schedule.
+     * @author Austin Pilz
+     */
+    CompactSchedule readable() {
+
+        if (frozen == null) {
+            return this;
+        }
+
+        CompactSchedule copy = new CompactSchedule();
+        copy.frozen = frozen;
+        copy.size = size;
+        copy.version = version;
+        copy.thaw();
+
+        return copy;
+    }
+
+    private static int writeVarLong(byte[] buffer, int position, long value) {
+
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        buffer[position++] = (byte) value;
+
+        return position;
+    }
+
+    private static long readVarLong(byte[] buffer, int[] cursor) {
+
+        int position = cursor[0];
+        long value = 0;
+        int shift = 0;
+        byte b;
+
+        do {
+            b = buffer[position++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        cursor[0] = position;
+
+        return value;
+    }
+}
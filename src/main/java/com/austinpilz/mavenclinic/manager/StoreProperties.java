@@ -0,0 +1,38 @@
+package com.austinpilz.mavenclinic.manager;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Configuration for how the appointment store bounds its memory, bound from {@code maven.store}.
+ *
+ * @author Austin Pilz
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "maven.store")
+public class StoreProperties {
+
+    /**
+     * How long a user with upcoming appointments can go unused before their schedule is frozen.
+     */
+    private Duration idleTimeout = Duration.ofMinutes(30);
+
+    /**
+     * How long a user whose appointments are all in the past can go unused before their schedule is frozen.
+     */
+    private Duration pastIdleTimeout = Duration.ofMinutes(5);
+
+    /**
+     * Maximum number of users whose schedules are kept active. The least recently used are frozen beyond this.
+     */
+    private int maxActiveUsers = 250_000;
+
+    /**
+     * How often the store is swept for users to freeze.
+     */
+    private Duration evictionInterval = Duration.ofMinutes(1);
+}
@@ -1,17 +1,18 @@
 package com.austinpilz.mavenclinic.manager;
 
+import com.austinpilz.mavenclinic.core.AppointmentSlot;
+import com.austinpilz.mavenclinic.core.AvailableSlot;
 import com.austinpilz.mavenclinic.core.MavenAppointment;
 import com.austinpilz.mavenclinic.core.ScheduleAppointmentRequest;
 import com.austinpilz.mavenclinic.core.ScheduleAppointmentResponse;
+import com.austinpilz.mavenclinic.exception.NotShardOwnerException;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * The User Appointment Manager controls all of the appointments for a specific user. It allows for scheduling new appointments
@@ -20,14 +21,56 @@ import java.util.Map;
  * Normally this logic would be in the Appointment Service as it is business logic, but since this application is not
  * using a database back end, this style of manager allows us to simulate it a bit more cleanly.
  *
+ * Reviewer Note: Every method that touches the appointments is synchronized on the manager itself, which gives each user
+ * their own lock. That makes the one appointment per day check and the insert a single atomic step, so two concurrent
+ * requests for the same user and day can never both be accepted, while requests for different users never block each other.
+ *
+ * The appointments are held in a {@link CompactSchedule} (epoch day plus half hour slot), and {@link MavenAppointment}s
+ * are only built when they are handed out through the API. A manager that sits idle is frozen by the
+ * {@link AppointmentStoreEviction} into the schedule's compact cold form and is thawed again, under the same lock, the
+ * next time the user books or looks up their appointments.
+ *
  * @author Austin Pilz
  */
 @AllArgsConstructor
 @Builder
 public class UserAppointmentManager {
 
+    // Never booked into, it stands in for the schedule of a user without a manager.
+    private static final CompactSchedule NO_APPOINTMENTS = new CompactSchedule();
+
     private final String userId;
-    private final Map<LocalDate, MavenAppointment> appointments = new HashMap<>();
+    private final AppointmentCommitListener commitListener;
+    private final CompactSchedule schedule = new CompactSchedule();
+
+    /**
+     * Receives a user's schedule in its compact form.
+     */
+    @FunctionalInterface
+    public interface ScheduleExporter {
+
+        /**
+         * Called with the user's appointments, sorted by day. The arrays belong to the manager and are only valid for the
+         * duration of the call, they must not be kept or modified.
+         *
+         * @param userId User ID.
+         * @param epochDays Epoch day of each appointment.
+         * @param slots Half hour slot of each appointment.
+         * @param count Number of appointments.
+         */
+        void export(String userId, int[] epochDays, byte[] slots, int count);
+    }
+
+    /**
+     * Creates a manager for the provided user that does not notify anyone of its commits.
+     *
+     * @param userId User ID.
+     * @author Austin Pilz
+     */
+    public UserAppointmentManager(String userId) {
+
+        this(userId, AppointmentCommitListener.NONE);
+    }
 
     /**
      * Processes the appointment schedule request for the user. This will determine if the appointment being requested
@@ -38,44 +81,74 @@ public class UserAppointmentManager {
      * to what is sent in), but that could be a disconnect between what the user thought the time was and what we schedule
      * it to be, so I opted not to do that.
      *
+     * The check and the insert happen while holding this user's lock, so the scheduling decision is atomic. The responses
+     * returned are the shared, immutable ones from {@link ScheduleAppointmentResponse}, so deciding allocates nothing.
+     *
      * @param request Schedule Appointment Response.
      * @return Schedule Appointment Response.
      * @author Austin Pilz
      */
-    public ScheduleAppointmentResponse scheduleAppointment(ScheduleAppointmentRequest request) {
+    public synchronized ScheduleAppointmentResponse scheduleAppointment(ScheduleAppointmentRequest request) {
 
-        ScheduleAppointmentResponse response = new ScheduleAppointmentResponse();
+        LocalDateTime time = request.getAppointmentTime();
+
+        // Validate the day can be held at all, before anything else reads it.
+        if (!AppointmentSlot.isInRange(time)) {
+            return ScheduleAppointmentResponse.INVALID_TIME;
+        }
+
+        int epochDay = AppointmentSlot.epochDayOf(time);
 
         // Validate constraint of only one appointment per day.
-        if (isAlreadyAppointmentScheduled(request.getAppointmentTime().toLocalDate())) {
+        if (active().contains(epochDay)) {
             // The user already has an appointment scheduled on this date which is the only one they can have.
-            response.setStatusMessage("User already has existing appointment on " + request.getAppointmentTime().toLocalDate());
-
-            return response;
+            return ScheduleAppointmentResponse.duplicateDay(epochDay);
         }
 
         // Validate constraint of time on the hour or half past.
-        if (!isAppointmentTimeValid(request.getAppointmentTime())) {
+        if (!isAppointmentTimeValid(time)) {
             // The appointment time is not valid.
-            response.setStatusMessage("Appointment time must be on the hour or half past.");
-
-            return response;
+            return ScheduleAppointmentResponse.INVALID_TIME;
         }
 
-        // Create the new appointment.
-        MavenAppointment appointment = MavenAppointment.builder()
-                .userId(request.getUserId())
-                .start(request.getAppointmentTime())
-                .end(request.getAppointmentTime().plusMinutes(30)) // Every appointment is 30 min, exactly.
-                .build();
+        int slot = AppointmentSlot.slotOf(time);
+
+        // Hand the appointment to the commit listener (journal, etc.) first. If it fails the appointment is not committed.
+        commitListener.onAppointmentCommitted(userId, epochDay, slot);
 
         // "Schedule" the appointment by persisting it.
-        addAppointment(appointment);
+        schedule.insert(epochDay, slot);
 
-        // Update our response since we accepted the request.
-        response.setAppointmentAccepted(true);
+        return ScheduleAppointmentResponse.ACCEPTED;
+    }
 
-        return response;
+    /**
+     * Processes several appointment schedule requests for the user in one pass, in the order provided. The user's lock is
+     * taken once for the whole group rather than once per request, and each request sees the bookings accepted before it,
+     * so two requests in the group for the same day result in the first being accepted and the second rejected.
+     *
+     * Reviewer Note: In cluster mode the user can move to another node partway through the group, at which point the
+     * cluster's commit guard refuses the next booking. The group stops there and only the responses of the requests
+     * already applied are returned, so the caller keeps those and sends the rest on to the new owner.
+     *
+     * @param requests Schedule Appointment Requests, all for this user.
+     * @return Schedule Appointment Responses, in the same order as the requests, for as many of them as were applied.
+     * @author Austin Pilz
+     */
+    public synchronized List<ScheduleAppointmentResponse> scheduleAppointments(List<ScheduleAppointmentRequest> requests) {
+
+        List<ScheduleAppointmentResponse> responses = new ArrayList<>(requests.size());
+
+        for (ScheduleAppointmentRequest request : requests) {
+            try {
+                responses.add(scheduleAppointment(request));
+            } catch (NotShardOwnerException e) {
+                // The user moved away, the rest of the group is for their new owner.
+                break;
+            }
+        }
+
+        return responses;
     }
 
     /**
@@ -84,9 +157,87 @@ public class UserAppointmentManager {
      * @param appointment Appointment.
      * @author Austin Pilz
      */
-    void addAppointment(MavenAppointment appointment) {
+    synchronized void addAppointment(MavenAppointment appointment) {
+
+        active().insert(AppointmentSlot.epochDayOf(appointment.getStart()), AppointmentSlot.slotOf(appointment.getStart()));
+    }
+
+    /**
+     * Restores a previously committed appointment, such as one read back from the journal on startup. Unlike scheduling,
+     * this is not reported to the commit listener as a commit, only as a restore. Restoring an appointment on a day that
+     * is already booked does nothing, so replaying the same appointment more than once is harmless.
+     *
+     * @param epochDay Epoch day of the appointment.
+     * @param slot Half hour slot of the day the appointment starts in.
+     * @author Austin Pilz
+     */
+    public synchronized void restoreAppointment(int epochDay, int slot) {
+
+        if (active().insert(epochDay, slot)) {
+            commitListener.onAppointmentRestored(userId, epochDay, slot);
+        }
+    }
+
+    /**
+     * Imports an appointment committed elsewhere, such as on the node that owned the user before them in cluster mode.
+     * Unlike restoring, this is reported to the commit listener as an import, which is a commit, so it is journaled like
+     * any booking here.
+     * Importing an appointment on a day that is already booked does nothing.
+     *
+     * @param epochDay Epoch day of the appointment.
+     * @param slot Half hour slot of the day the appointment starts in.
+     * @return If the appointment was imported.
+     * @author Austin Pilz
+     */
+    public synchronized boolean importAppointment(int epochDay, int slot) {
+
+        if (active().contains(epochDay)) {
+            return false;
+        }
+
+        commitListener.onAppointmentImported(userId, epochDay, slot);
+        schedule.insert(epochDay, slot);
+
+        return true;
+    }
+
+    /**
+     * Removes an appointment, such as one accepted in a batch that then failed to commit, and reports it to the commit
+     * listener as removed so the journal and the views built from it forget it too. Does nothing if the user has no
+     * appointment in that slot.
+     *
+     * @param epochDay Epoch day of the appointment.
+     * @param slot Half hour slot of the day the appointment starts in.
+     * @return If the appointment was removed.
+     * @author Austin Pilz
+     */
+    public synchronized boolean removeAppointment(int epochDay, int slot) {
+
+        if (!active().remove(epochDay, slot)) {
+            return false;
+        }
 
-        appointments.put(appointment.getStart().toLocalDate(), appointment);
+        commitListener.onAppointmentRemoved(userId, epochDay, slot);
+
+        return true;
+    }
+
+    /**
+     * Hands the user's schedule to the provided exporter and reports each of their appointments to the commit listener as
+     * removed, for when the user leaves this store. The manager must not be used afterwards.
+     *
+     * @param exporter Schedule exporter.
+     * @author Austin Pilz
+     */
+    synchronized void release(ScheduleExporter exporter) {
+
+        CompactSchedule readable = schedule.readable();
+
+        exporter.export(userId, readable.epochDays(), readable.slots(), readable.size());
+
+        for (int i = 0; i < readable.size(); i++) {
+            commitListener.onAppointmentRemoved(userId, readable.epochDayAt(i), readable.slotAt(i));
+        }
     }
 
     /**
@@ -96,16 +247,16 @@ public class UserAppointmentManager {
      * @return If there is already an appointment scheduled for the user on the provided date.
      * @author Austin Pilz
      */
-    boolean isAlreadyAppointmentScheduled(LocalDate date) {
+    synchronized boolean isAlreadyAppointmentScheduled(LocalDate date) {
 
-        return appointments.containsKey(date);
+        return active().contains((int) date.toEpochDay());
     }
 
     /**
      * Determines if the desired appointment time adheres to our requirements of being on the hour or half past.
      *
-     * Reviewer Note: This could be moved out into a static util class since it's a validation that can be run statically.
-     * For ease of use for this small scale example, I kept it here.
+     * Reviewer Note: The check itself lives in {@link AppointmentSlot#isSlotStart} so it can be run before a user has a
+     * manager. It only reads the time's fields rather than building the two comparison times it used to.
      *
      * @param time Desired appointment time.
      * @return If the appointment time is on the hour or half past.
@@ -113,16 +264,11 @@ public class UserAppointmentManager {
      */
     boolean isAppointmentTimeValid(LocalDateTime time) {
 
-        LocalDate appointmentDate = time.toLocalDate();
-
-        LocalDateTime onTheHour = appointmentDate.atTime(time.getHour(), 00);
-        LocalDateTime halfPastHour = appointmentDate.atTime(time.getHour(), 30);
-
-        return time.isEqual(onTheHour) || time.isEqual(halfPastHour);
+        return AppointmentSlot.isSlotStart(time);
     }
 
     /**
-     * Returns all of the users currently scheduled appointments.
+     * Returns all of the users currently scheduled appointments, ordered by date.
      *
      * Reviewer Note: You could also make this return an unmodifiable collection since it really shouldn't be modified
      * elsewhere. In this case it's not of big concern since the list is created locally and isn't a reference to a list
@@ -131,8 +277,288 @@ public class UserAppointmentManager {
      * @return All user scheduled appointments.
      * @author Austin Pilz
      */
-    public List<MavenAppointment> getAllAppointments() {
+    public synchronized List<MavenAppointment> getAllAppointments() {
+
+        CompactSchedule schedule = active();
+        List<MavenAppointment> appointments = new ArrayList<>(schedule.size());
+
+        for (int i = 0; i < schedule.size(); i++) {
+            appointments.add(toAppointment(schedule, i));
+        }
+
+        return appointments;
+    }
+
+    /**
+     * Returns the user's appointments between the provided days (inclusive), in date order, up to the provided limit.
+     *
+     * Reviewer Note: The schedule is kept sorted by day, so this binary searches to the first day in range and only builds
+     * the appointments it returns. That's O(log n + k) no matter how many years of bookings the user has.
+     *
+     * @param fromEpochDay First epoch day to include.
+     * @param toEpochDay Last epoch day to include.
+     * @param limit Maximum number of appointments to return.
+     * @return Appointments in range, in date order.
+     * @author Austin Pilz
+     */
+    public synchronized List<MavenAppointment> getAppointments(long fromEpochDay, long toEpochDay, int limit) {
+
+        return getAppointments(active(), fromEpochDay, toEpochDay, limit);
+    }
+
+    /**
+     * Returns the user's appointments between the provided days (inclusive), in date order, without thawing the user if
+     * they are frozen or counting as use of their schedule. This is meant for bulk reads of the whole store, such as
+     * exports, which shouldn't pull every idle user back into the hot tier.
+     *
+     * @param fromEpochDay First epoch day to include.
+     * @param toEpochDay Last epoch day to include.
+     * @return Appointments in range, in date order.
+     * @author Austin Pilz
+     */
+    public synchronized List<MavenAppointment> exportAppointments(long fromEpochDay, long toEpochDay) {
+
+        return getAppointments(schedule.readable(), fromEpochDay, toEpochDay, Integer.MAX_VALUE);
+    }
+
+    private List<MavenAppointment> getAppointments(CompactSchedule schedule, long fromEpochDay, long toEpochDay, int limit) {
+
+        if (fromEpochDay > Integer.MAX_VALUE || toEpochDay < Integer.MIN_VALUE) {
+            return new ArrayList<>();
+        }
+
+        int index = schedule.firstIndexOnOrAfter((int) Math.max(fromEpochDay, Integer.MIN_VALUE));
+        List<MavenAppointment> appointments = new ArrayList<>(Math.min(limit, schedule.size() - index));
+
+        while (index < schedule.size() && schedule.epochDayAt(index) <= toEpochDay && appointments.size() < limit) {
+            appointments.add(toAppointment(schedule, index++));
+        }
+
+        return appointments;
+    }
+
+    /**
+     * Returns the user's first appointment that starts at or after the provided time.
+     *
+     * @param time Time.
+     * @return Next appointment, or null if there is none.
+     * @author Austin Pilz
+     */
+    public synchronized MavenAppointment getNextAppointment(LocalDateTime time) {
+
+        CompactSchedule schedule = active();
+        int epochDay = AppointmentSlot.epochDayOf(time);
+        int index = schedule.firstIndexOnOrAfter(epochDay);
+
+        // An appointment on the same day only counts if it hasn't started yet.
+        if (index < schedule.size() && schedule.epochDayAt(index) == epochDay
+                && AppointmentSlot.startOf(epochDay, schedule.slotAt(index)).isBefore(time)) {
+            index++;
+        }
+
+        return index < schedule.size() ? toAppointment(schedule, index) : null;
+    }
+
+    /**
+     * Returns the first slots the user can book starting at or after the provided time, in time order. Every slot of a
+     * day the user has no appointment on is bookable, so the slots fill up the first free day before moving on to the
+     * next one, and days already booked are skipped a whole run at a time.
+     *
+     * @param time Time.
+     * @param limit Number of slots.
+     * @return Bookable slots.
+     * @author Austin Pilz
+     */
+    public synchronized List<AvailableSlot> getAvailableSlots(LocalDateTime time, int limit) {
+
+        return getAvailableSlots(active(), time, limit);
+    }
+
+    /**
+     * Returns the first slots a user with no appointments can book starting at or after the provided time.
+     *
+     * @param time Time.
+     * @param limit Number of slots.
+     * @return Bookable slots.
+     * @author Austin Pilz
+     */
+    public static List<AvailableSlot> getAvailableSlotsWithoutAppointments(LocalDateTime time, int limit) {
+
+        return getAvailableSlots(NO_APPOINTMENTS, time, limit);
+    }
+
+    private static List<AvailableSlot> getAvailableSlots(CompactSchedule schedule, LocalDateTime time, int limit) {
+
+        List<AvailableSlot> slots = new ArrayList<>(limit);
+
+        // Start at the first slot that hasn't already started.
+        int epochDay = AppointmentSlot.epochDayOf(time);
+        int slot = AppointmentSlot.slotOf(time) + (AppointmentSlot.isSlotStart(time) ? 0 : 1);
+
+        while (slots.size() < limit) {
+            if (slot == AppointmentSlot.SLOTS_PER_DAY) {
+                epochDay++;
+                slot = 0;
+            }
+
+            int freeDay = schedule.nextFreeDay(epochDay);
+            if (freeDay != epochDay) {
+                epochDay = freeDay;
+                slot = 0;
+            }
+
+            for (; slot < AppointmentSlot.SLOTS_PER_DAY && slots.size() < limit; slot++) {
+                LocalDateTime start = AppointmentSlot.startOf(epochDay, slot);
+                slots.add(AvailableSlot.builder()
+                        .start(start)
+                        .end(start.plusMinutes(AppointmentSlot.MINUTES_PER_SLOT))
+                        .build());
+            }
+        }
+
+        return slots;
+    }
+
+    /**
+     * Hands the user's schedule, in its compact form, to the provided exporter while holding the user's lock. A frozen
+     * user is decoded for the call but stays frozen.
+     *
+     * @param exporter Schedule exporter.
+     * @author Austin Pilz
+     */
+    public synchronized void exportSchedule(ScheduleExporter exporter) {
+
+        CompactSchedule readable = schedule.readable();
+
+        exporter.export(userId, readable.epochDays(), readable.slots(), readable.size());
+    }
+
+    /**
+     * Freezes the user's schedule into its compact cold form if it hasn't been used since the provided cutoff. Users
+     * whose appointments are all before the provided day (or who have none) are held to the separate, usually earlier,
+     * past cutoff, since they are the least likely to come back.
+     *
+     * @param cutoffNanos {@link System#nanoTime()} the schedule must have been idle since.
+     * @param pastCutoffNanos {@link System#nanoTime()} a schedule with only past appointments must have been idle since.
+     * @param todayEpochDay Epoch day of today.
+     * @return If the schedule was frozen by this call.
+     * @author Austin Pilz
+     */
+    public synchronized boolean freezeIfIdle(long cutoffNanos, long pastCutoffNanos, int todayEpochDay) {
+
+        if (schedule.isFrozen()) {
+            return false;
+        }
+
+        boolean onlyPast = schedule.size() == 0 || schedule.epochDayAt(schedule.size() - 1) < todayEpochDay;
+        long cutoff = onlyPast ? pastCutoffNanos : cutoffNanos;
+
+        if (schedule.lastAccessNanos() - cutoff > 0) {
+            return false;
+        }
+
+        schedule.freeze();
+
+        return true;
+    }
+
+    /**
+     * Returns if the user's schedule is currently frozen.
+     *
+     * @return If the schedule is frozen.
+     * @author Austin Pilz
+     */
+    public synchronized boolean isFrozen() {
+
+        return schedule.isFrozen();
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} the user's schedule was last used at.
+     *
+     * @return Last access time.
+     * @author Austin Pilz
+     */
+    public synchronized long getLastAccessNanos() {
+
+        return schedule.lastAccessNanos();
+    }
+
+    /**
+     * Returns the version of the user's appointments. It goes up with every appointment committed or rolled back for the
+     * user, so two reads that see the same version saw the same appointments. Reading it does not thaw a frozen user.
+     *
+     * @return Version.
+     * @author Austin Pilz
+     */
+    public synchronized long getVersion() {
+
+        return schedule.version();
+    }
+
+    /**
+     * Returns the number of appointments the user has scheduled.
+     *
+     * @return Number of appointments.
+     * @author Austin Pilz
+     */
+    public synchronized int getAppointmentCount() {
+
+        return schedule.size();
+    }
+
+    /**
+     * Returns an estimate of the heap the user's schedule occupies, in bytes.
+     *
+     * @return Estimated bytes.
+     * @author Austin Pilz
+     */
+    public synchronized long getEstimatedBytes() {
+
+        return schedule.estimatedBytes();
+    }
+
+    /**
+     * Returns the schedule ready for use, thawing it if it was frozen, and records the use.
+     *
+     * @return Schedule.
+     * @author Austin Pilz
+     */
+    private CompactSchedule active() {
+
+        schedule.thaw();
+        schedule.touch(System.nanoTime());
+
+        return schedule;
+    }
+
+    /**
+     * Builds the API representation of the appointment at the provided index of the schedule.
+     *
+     * @param schedule Schedule.
+     * @param index Schedule index.
+     * @return Appointment.
+     * @author Austin Pilz
+     */
+    private MavenAppointment toAppointment(CompactSchedule schedule, int index) {
+
+        LocalDateTime start = AppointmentSlot.startOf(schedule.epochDayAt(index), schedule.slotAt(index));
+
+        return MavenAppointment.builder()
+                .userId(userId)
+                .start(start)
+                .end(start.plusMinutes(AppointmentSlot.MINUTES_PER_SLOT)) // Every appointment is 30 min, exactly.
+                .build();
+    }
+
+    /**
+     * Returns the ID of the user this manager belongs to.
+     *
+     * @return User ID.
+     * @author Austin Pilz
+     */
+    public String getUserId() {
 
-        return new ArrayList<>(appointments.values());
+        return userId;
     }
 }
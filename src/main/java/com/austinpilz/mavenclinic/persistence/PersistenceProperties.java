@@ -0,0 +1,43 @@
+package com.austinpilz.mavenclinic.persistence;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Configuration for the local appointment persistence (journal and snapshots), bound from {@code maven.persistence}.
+ *
+ * @author Austin Pilz
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "maven.persistence")
+public class PersistenceProperties {
+
+    /**
+     * Whether appointments are persisted to local disk and restored on startup.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Directory the journal segments and snapshots are written to.
+     */
+    private String directory = "data";
+
+    /**
+     * When the journal forces its writes to disk.
+     */
+    private FsyncPolicy fsyncPolicy = FsyncPolicy.INTERVAL;
+
+    /**
+     * How often the journal is forced to disk under the INTERVAL policy.
+     */
+    private Duration fsyncInterval = Duration.ofMillis(100);
+
+    /**
+     * How often a snapshot is taken, which bounds how much journal has to be replayed on startup.
+     */
+    private Duration snapshotInterval = Duration.ofMinutes(5);
+}
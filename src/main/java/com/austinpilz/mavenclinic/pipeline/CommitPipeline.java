@@ -0,0 +1,329 @@
+package com.austinpilz.mavenclinic.pipeline;
+
+import com.austinpilz.mavenclinic.core.AppointmentSlot;
+import com.austinpilz.mavenclinic.core.ScheduleAppointmentRequest;
+import com.austinpilz.mavenclinic.core.ScheduleAppointmentResponse;
+import com.austinpilz.mavenclinic.manager.AppointmentStore;
+import com.austinpilz.mavenclinic.manager.UserAppointmentManager;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The Commit Pipeline takes bookings off the request threads and applies them on a fixed set of writer threads. Users
+ * are spread across shards by user ID, and each shard has a {@link RingBuffer} that the request threads offer bookings
+ * to and a single writer thread that drains it in batches, applies each booking to its user's manager and then completes
+ * the booking's future. A user always lands on the same shard, so their bookings are applied in the order they arrived.
+ *
+ * Reviewer Note: Each batch is bracketed by {@link AppointmentStore#startBatch()} and {@link AppointmentStore#commitBatch()},
+ * so the journal forces a whole batch to disk at once instead of once per booking (group commit). The busier the shard,
+ * the bigger its batches and the fewer forces per booking, which is where the pipeline pulls ahead of applying bookings
+ * on the request threads, each paying for its own force.
+ *
+ * If a batch fails to commit, its accepted bookings are rolled back out of their users' managers before they are failed,
+ * so the journal, the indexes and a retry of the booking all see the day free again.
+ *
+ * A writer only stops once the pipeline is closed, its ring buffer is empty and no request thread is part way through
+ * handing it a booking, so every booking that makes it into a ring buffer is completed one way or the other. The
+ * pipeline is closed as a {@link SmartLifecycle}, which Spring stops before it destroys any bean, so the writers have
+ * drained while the journal they commit to is still open, whatever order the beans were created in. Its phase is below
+ * the web server's, so the server has stopped taking requests by then.
+ *
+ * The managers keep their locks. Every booking of a user is applied by the one writer of their shard, so those locks are
+ * never contended between bookings, but lookups, batch bookings, restores and cluster hand offs still take them and stay
+ * correct alongside the pipeline.
+ *
+ * @author Austin Pilz
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "maven.pipeline", name = "enabled", havingValue = "true")
+public class CommitPipeline implements SmartLifecycle {
+
+    // Stopped after the web server, whose phase is Integer.MAX_VALUE - 1, and before any bean is destroyed.
+    private static final int PHASE = Integer.MAX_VALUE - 2;
+
+    // How long a request thread waits before trying a full ring buffer again.
+    private static final long FULL_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    // How long an idle writer sleeps between checks, a booking offered in the meantime wakes it straight away.
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final PipelineProperties properties;
+    private final Shard[] shards;
+    private final DistributionSummary batchSizes;
+
+    private AppointmentStore store;
+    private volatile boolean running;
+
+    /**
+     * A booking waiting in a ring buffer, completed with its response once its batch is committed.
+     */
+    private static final class PendingBooking extends CompletableFuture<ScheduleAppointmentResponse> {
+
+        private final ScheduleAppointmentRequest request;
+        private UserAppointmentManager manager;
+        private ScheduleAppointmentResponse response;
+        private RuntimeException error;
+
+        private PendingBooking(ScheduleAppointmentRequest request) {
+
+            this.request = request;
+        }
+    }
+
+    public CommitPipeline(PipelineProperties properties, MeterRegistry registry) {
+
+        if (properties.getShards() < 1 || properties.getMaxBatchSize() < 1) {
+            throw new IllegalArgumentException("The commit pipeline needs at least one shard and a batch of at least one.");
+        }
+
+        this.properties = properties;
+        this.shards = new Shard[properties.getShards()];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(i);
+        }
+
+        batchSizes = DistributionSummary.builder("maven.pipeline.batch")
+                .description("Bookings applied and committed together by a commit pipeline writer.")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    /**
+     * Starts the writers applying bookings to the provided store.
+     *
+     * @param store Appointment store.
+     * @author Austin Pilz
+     */
+    public synchronized void attach(AppointmentStore store) {
+
+        if (this.store != null) {
+            throw new IllegalStateException("The commit pipeline is already attached to a store.");
+        }
+
+        this.store = store;
+        this.running = true;
+
+        for (Shard shard : shards) {
+            shard.thread.start();
+        }
+    }
+
+    /**
+     * Hands the booking to the writer of its user's shard.
+     *
+     * @param request Schedule Appointment Request.
+     * @return Future completed with the response once the booking is committed.
+     * @author Austin Pilz
+     */
+    public CompletableFuture<ScheduleAppointmentResponse> submit(ScheduleAppointmentRequest request) {
+
+        Shard shard = shards[Math.floorMod(request.getUserId().hashCode(), shards.length)];
+        PendingBooking booking = new PendingBooking(request);
+
+        // Announce the booking before checking the pipeline is running, so the writer can't stop in between.
+        shard.submitting.incrementAndGet();
+        try {
+            if (!running) {
+                throw new IllegalStateException("The commit pipeline is not running.");
+            }
+
+            shard.offer(booking);
+        } finally {
+            shard.submitting.decrementAndGet();
+        }
+
+        return booking;
+    }
+
+    /**
+     * Hands the booking to the writer of its user's shard and waits for it to be committed.
+     *
+     * @param request Schedule Appointment Request.
+     * @return Schedule Appointment Response.
+     * @author Austin Pilz
+     */
+    public ScheduleAppointmentResponse scheduleAppointment(ScheduleAppointmentRequest request) {
+
+        try {
+            return submit(request).join();
+        } catch (CompletionException e) {
+            // Rethrow what the writer ran into, such as a journal failure, as if the booking had been applied right here.
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void start() {
+
+        // The writers start once the pipeline is attached to a store.
+    }
+
+    @Override
+    public void stop() {
+
+        close();
+    }
+
+    @Override
+    public boolean isRunning() {
+
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+
+        return PHASE;
+    }
+
+    /**
+     * Stops taking bookings, lets the writers apply the ones already handed to them and waits for them to finish.
+     *
+     * @author Austin Pilz
+     */
+    @PreDestroy
+    public synchronized void close() {
+
+        if (!running) {
+            return;
+        }
+
+        running = false;
+
+        for (Shard shard : shards) {
+            LockSupport.unpark(shard.thread);
+        }
+
+        for (Shard shard : shards) {
+            try {
+                shard.thread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            if (shard.thread.isAlive()) {
+                log.warn("Commit pipeline writer {} is still applying bookings.", shard.thread.getName());
+            }
+        }
+    }
+
+    private final class Shard implements Runnable {
+
+        private final RingBuffer<PendingBooking> ring = new RingBuffer<>(properties.getBufferSize());
+        private final PendingBooking[] batch = new PendingBooking[properties.getMaxBatchSize()];
+        private final AtomicInteger submitting = new AtomicInteger();
+        private final Thread thread;
+        private volatile boolean idle;
+
+        private Shard(int id) {
+
+            thread = new Thread(this, "commit-pipeline-" + id);
+            thread.setDaemon(true);
+        }
+
+        private void offer(PendingBooking booking) {
+
+            // A full ring buffer holds the request thread back until the writer catches up.
+            while (!ring.offer(booking)) {
+                if (!running) {
+                    throw new IllegalStateException("The commit pipeline is not running.");
+                }
+                LockSupport.parkNanos(FULL_BACKOFF_NANOS);
+            }
+
+            if (idle) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        @Override
+        public void run() {
+
+            // Checking for request threads before the ring buffer means a booking offered after this check is seen by it.
+            while (running || submitting.get() > 0 || !ring.isEmpty()) {
+                int size = ring.drain(batch);
+
+                if (size > 0) {
+                    apply(size);
+                    continue;
+                }
+
+                // Announce the writer is going idle before the last look, so a booking offered after that look unparks it.
+                idle = true;
+                if ((running || submitting.get() > 0) && ring.isEmpty()) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+                idle = false;
+            }
+        }
+
+        private void apply(int size) {
+
+            store.startBatch();
+
+            for (int i = 0; i < size; i++) {
+                PendingBooking booking = batch[i];
+
+                try {
+                    booking.manager = store.getOrCreate(booking.request.getUserId());
+                    booking.response = booking.manager.scheduleAppointment(booking.request);
+                } catch (RuntimeException e) {
+                    booking.error = e;
+                }
+            }
+
+            RuntimeException commitError = null;
+            try {
+                store.commitBatch();
+            } catch (RuntimeException e) {
+                log.error("Unable to commit a batch of {} bookings.", size, e);
+                commitError = e;
+            }
+
+            // Only now that the batch is committed are its bookings acknowledged.
+            for (int i = 0; i < size; i++) {
+                PendingBooking booking = batch[i];
+                batch[i] = null;
+
+                if (booking.error == null && commitError != null && booking.response.isAppointmentAccepted()) {
+                    rollback(booking);
+                    booking.error = commitError;
+                }
+
+                if (booking.error != null) {
+                    booking.completeExceptionally(booking.error);
+                } else {
+                    booking.complete(booking.response);
+                }
+            }
+
+            batchSizes.record(size);
+        }
+
+        private void rollback(PendingBooking booking) {
+
+            try {
+                store.rollbackAppointment(booking.manager, AppointmentSlot.epochDayOf(booking.request.getAppointmentTime()),
+                        AppointmentSlot.slotOf(booking.request.getAppointmentTime()));
+            } catch (RuntimeException e) {
+                log.error("Unable to roll back the failed booking of {}.", booking.request.getUserId(), e);
+            }
+        }
+    }
+}
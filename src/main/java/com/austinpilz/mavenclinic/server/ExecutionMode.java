@@ -0,0 +1,19 @@
+package com.austinpilz.mavenclinic.server;
+
+/**
+ * How the REST layer runs requests.
+ *
+ * @author Austin Pilz
+ */
+public enum ExecutionMode {
+
+    /**
+     * Tomcat's bounded pool of platform worker threads (server.tomcat.threads.max), one per in-flight request.
+     */
+    PLATFORM,
+
+    /**
+     * A new virtual thread per request, bounded only by server.tomcat.max-connections. Needs Java 21 or newer at runtime.
+     */
+    VIRTUAL
+}
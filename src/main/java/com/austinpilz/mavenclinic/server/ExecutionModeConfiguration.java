@@ -0,0 +1,64 @@
+package com.austinpilz.mavenclinic.server;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Switches the REST layer between Tomcat's platform worker threads and virtual threads, according to
+ * {@code maven.server.execution-mode}. See {@link ExecutionMode}.
+ *
+ * In virtual mode, Tomcat hands every request to a new virtual thread instead of its bounded worker pool, so a request
+ * blocked on a slow client or on the journal no longer holds one of a couple hundred platform threads. The async
+ * requests (the NDJSON export) run on virtual threads too, rather than Spring MVC's default executor.
+ *
+ * Reviewer Note: Tomcat's NIO connector already multiplexes idle connections without threads, it's the worker pool that
+ * caps how many requests can be in flight. With virtual threads that cap becomes server.tomcat.max-connections. Be aware
+ * that before Java 24 a virtual thread blocking inside a synchronized block (such as a booking waiting on an fsync under
+ * the user's lock with the ALWAYS policy) pins its carrier thread.
+ *
+ * @author Austin Pilz
+ */
+@Slf4j
+@Configuration
+public class ExecutionModeConfiguration implements WebMvcConfigurer {
+
+    private final ObjectProvider<ExecutorService> virtualThreadExecutor;
+
+    public ExecutionModeConfiguration(@Qualifier("virtualThreadExecutor") ObjectProvider<ExecutorService> virtualThreadExecutor) {
+
+        this.virtualThreadExecutor = virtualThreadExecutor;
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnProperty(prefix = "maven.server", name = "execution-mode", havingValue = "virtual")
+    public ExecutorService virtualThreadExecutor() {
+
+        log.info("Serving requests on virtual threads.");
+
+        return VirtualThreads.newThreadPerTaskExecutor();
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "maven.server", name = "execution-mode", havingValue = "virtual")
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer(
+            @Qualifier("virtualThreadExecutor") ExecutorService virtualThreadExecutor) {
+
+        return protocolHandler -> protocolHandler.setExecutor(virtualThreadExecutor);
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+
+        virtualThreadExecutor.ifAvailable(executor -> configurer.setTaskExecutor(new TaskExecutorAdapter(executor)));
+    }
+}
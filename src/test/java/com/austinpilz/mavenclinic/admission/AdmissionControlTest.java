@@ -0,0 +1,164 @@
+package com.austinpilz.mavenclinic.admission;
+
+import com.austinpilz.mavenclinic.exception.AdmissionRejectedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionControlTest {
+
+    private SimpleMeterRegistry registry;
+    private AdmissionProperties properties;
+    private AdmissionControl admission;
+
+    @BeforeEach
+    void prepare() {
+        registry = new SimpleMeterRegistry();
+        properties = new AdmissionProperties();
+        properties.setEnabled(true);
+    }
+
+    @AfterEach
+    void close() {
+        if (admission != null) {
+            admission.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Token Bucket - Refills At Its Rate Up To Its Burst")
+    void shouldTestTokenBucket() {
+
+        TokenBucket bucket = new TokenBucket(10, 2, 0);
+
+        assertEquals(0, bucket.tryAcquire(1, 0));
+        assertEquals(0, bucket.tryAcquire(1, 0));
+
+        // Empty, a token comes every 100ms.
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), bucket.tryAcquire(1, 0));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(50), bucket.tryAcquire(1, TimeUnit.MILLISECONDS.toNanos(50)));
+        assertEquals(0, bucket.tryAcquire(1, TimeUnit.MILLISECONDS.toNanos(100)));
+
+        // Idle for long enough, it holds no more than its burst.
+        assertFalse(bucket.isFull(TimeUnit.MILLISECONDS.toNanos(150)));
+        assertTrue(bucket.isFull(TimeUnit.SECONDS.toNanos(10)));
+        assertEquals(0, bucket.tryAcquire(2, TimeUnit.SECONDS.toNanos(10)));
+        assertNotEquals(0, bucket.tryAcquire(1, TimeUnit.SECONDS.toNanos(10)));
+    }
+
+    @Test
+    @DisplayName("Admit - User Over Their Rate Is Shed")
+    void shouldTestUserRate() {
+
+        properties.setUserRate(1);
+        properties.setUserBurst(3);
+        admission = new AdmissionControl(properties, registry);
+
+        for (int i = 0; i < 3; i++) {
+            admission.admit("user1").close();
+        }
+
+        AdmissionRejectedException rejected = assertThrows(AdmissionRejectedException.class, () -> admission.admit("user1"));
+        assertEquals(1, rejected.getRetryAfterSeconds());
+
+        // Other users have their own rate.
+        admission.admit("user2").close();
+
+        assertEquals(4.0, registry.get("maven.admission.admitted").counter().count());
+        assertEquals(1.0, registry.get("maven.admission.shed").tag("reason", AdmissionControl.USER_RATE).counter().count());
+    }
+
+    @Test
+    @DisplayName("Admit - Clinic Over The Global Rate Is Shed")
+    void shouldTestGlobalRate() {
+
+        properties.setGlobalRate(0.1);
+        properties.setGlobalBurst(5);
+        admission = new AdmissionControl(properties, registry);
+
+        admission.admitBatch(4).close();
+        admission.admit("user1").close();
+
+        // The bucket is empty and refills a token every 10 seconds.
+        AdmissionRejectedException rejected = assertThrows(AdmissionRejectedException.class, () -> admission.admit("user2"));
+        assertEquals(10, rejected.getRetryAfterSeconds());
+        assertEquals(1.0, registry.get("maven.admission.shed").tag("reason", AdmissionControl.GLOBAL_RATE).counter().count());
+    }
+
+    @Test
+    @DisplayName("Admit - Bookings Beyond The Concurrency Limit Wait Then Are Shed")
+    void shouldTestConcurrency() throws Exception {
+
+        properties.setMaxConcurrent(1);
+        properties.setMaxQueueDelay(Duration.ofMillis(50));
+        admission = new AdmissionControl(properties, registry);
+
+        AdmissionControl.Permit held = admission.admit("user1");
+
+        // The slot frees up while the booking waits, so it gets in.
+        Thread releaser = new Thread(() -> {
+            sleep(10);
+            held.close();
+        });
+        releaser.start();
+        admission.admit("user2").close();
+        releaser.join();
+
+        // The slot never frees up, so the booking is shed once it has waited the queue delay.
+        AdmissionControl.Permit stuck = admission.admit("user3");
+        long startedAt = System.nanoTime();
+        assertThrows(AdmissionRejectedException.class, () -> admission.admit("user4"));
+        assertTrue(System.nanoTime() - startedAt >= TimeUnit.MILLISECONDS.toNanos(50));
+        stuck.close();
+
+        assertEquals(1.0, registry.get("maven.admission.shed").tag("reason", AdmissionControl.CONCURRENCY).counter().count());
+        assertEquals(0.0, registry.get("maven.admission.in-flight").gauge().value());
+    }
+
+    @Test
+    @DisplayName("Admit - Everything Gets In When Disabled")
+    void shouldTestDisabled() {
+
+        properties.setEnabled(false);
+        properties.setUserBurst(1);
+        properties.setMaxConcurrent(1);
+        admission = new AdmissionControl(properties, registry);
+
+        for (int i = 0; i < 10; i++) {
+            admission.admit("user1");
+        }
+
+        assertEquals(0, admission.getTrackedUserCount());
+    }
+
+    @Test
+    @DisplayName("Sweep - Drops Users Whose Bucket Refilled")
+    void shouldTestSweep() {
+
+        properties.setUserRate(1_000_000);
+        admission = new AdmissionControl(properties, registry);
+
+        admission.admit("user1").close();
+        assertEquals(1, admission.getTrackedUserCount());
+
+        sleep(5);
+        assertEquals(1, admission.sweep());
+        assertEquals(0, admission.getTrackedUserCount());
+    }
+
+    private static void sleep(long millis) {
+
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.austinpilz.mavenclinic.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SerializedResponseCacheTest {
+
+    private SimpleMeterRegistry registry;
+    private SerializedResponseCache cache;
+
+    @BeforeEach
+    void prepare() {
+        registry = new SimpleMeterRegistry();
+        cache = new SerializedResponseCache(registry, 3, 16);
+    }
+
+    @Test
+    @DisplayName("Get - Only Returned For The Version It Was Built From")
+    void shouldTestGetByVersion() {
+
+        byte[] body = {1, 2, 3};
+        cache.put("hireMePlz", 4, body);
+
+        assertSame(body, cache.get("hireMePlz", 4));
+        assertNull(cache.get("hireMePlz", 5));
+        assertNull(cache.get("anotherUser", 4));
+
+        // An older body never replaces a newer one.
+        cache.put("hireMePlz", 3, new byte[]{9});
+        assertSame(body, cache.get("hireMePlz", 4));
+
+        assertEquals(2.0, registry.get("maven.response.cache").tag("result", "hit").counter().count());
+        assertEquals(2.0, registry.get("maven.response.cache").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    @DisplayName("Put - Bounded By Entries And Entry Size")
+    void shouldTestBounds() {
+
+        for (int user = 0; user < 10; user++) {
+            cache.put("user" + user, 1, new byte[]{1});
+        }
+        assertEquals(3, cache.size());
+
+        cache.put("bigUser", 1, new byte[17]);
+        assertNull(cache.get("bigUser", 1));
+    }
+}
@@ -0,0 +1,92 @@
+package com.austinpilz.mavenclinic.cluster;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsistentHashRingTest {
+
+    private static final List<String> NODES = Arrays.asList("http://a:8662", "http://b:8662", "http://c:8662", "http://d:8662");
+    private static final int USERS = 100_000;
+
+    @Test
+    @DisplayName("Owner Of - Users Spread Evenly Over The Nodes")
+    void shouldTestBalance() {
+
+        ConsistentHashRing ring = new ConsistentHashRing(NODES, 128);
+        Map<String, Integer> owned = new HashMap<>();
+
+        for (int i = 0; i < USERS; i++) {
+            owned.merge(ring.ownerOf("user" + i), 1, Integer::sum);
+        }
+
+        assertEquals(NODES.size(), owned.size());
+        for (int count : owned.values()) {
+            assertTrue(Math.abs(count - USERS / NODES.size()) < USERS / NODES.size() / 5, "Unbalanced: " + owned);
+        }
+    }
+
+    @Test
+    @DisplayName("With - Joining Only Moves Users To The New Node")
+    void shouldTestJoinMovesOnlyToNewNode() {
+
+        ConsistentHashRing before = new ConsistentHashRing(NODES.subList(0, 3), 128);
+        ConsistentHashRing after = before.with(NODES.get(3));
+        int moved = 0;
+
+        for (int i = 0; i < USERS; i++) {
+            String userId = "user" + i;
+
+            if (!before.ownerOf(userId).equals(after.ownerOf(userId))) {
+                assertEquals(NODES.get(3), after.ownerOf(userId));
+                moved++;
+            }
+        }
+
+        // Roughly a quarter of the users should move to the fourth node.
+        assertTrue(Math.abs(moved - USERS / 4) < USERS / 20, "Moved " + moved);
+    }
+
+    @Test
+    @DisplayName("With - Rings Of The Same Nodes Agree")
+    void shouldTestSameNodesAgree() {
+
+        ConsistentHashRing joined = new ConsistentHashRing(NODES.subList(0, 1), 64);
+        for (String node : NODES) {
+            joined = joined.with(node);
+        }
+
+        ConsistentHashRing direct = new ConsistentHashRing(Arrays.asList("http://d:8662", "http://c:8662", "http://b:8662", "http://a:8662"), 64);
+
+        assertSame(joined, joined.with(NODES.get(2)));
+        assertEquals(direct.getNodes(), joined.getNodes());
+        for (int i = 0; i < 1_000; i++) {
+            assertEquals(direct.ownerOf("user" + i), joined.ownerOf("user" + i));
+        }
+    }
+
+    @Test
+    @DisplayName("Start Join - Previous Ring Is Kept Until The Join Finishes")
+    void shouldTestMembershipJoin() {
+
+        ClusterProperties properties = new ClusterProperties();
+        properties.setSelf(NODES.get(3));
+        ClusterMembership membership = new ClusterMembership(properties);
+
+        membership.startJoin(NODES.subList(0, 3));
+
+        assertEquals(NODES, membership.getRing().getNodes());
+        assertEquals(NODES.subList(0, 3), membership.getPreviousRing().getNodes());
+
+        membership.finishJoin();
+
+        assertNull(membership.getPreviousRing());
+        assertEquals(NODES, membership.join(NODES.get(0)));
+    }
+}
@@ -0,0 +1,66 @@
+package com.austinpilz.mavenclinic.core;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScheduleAppointmentRequestDeserializerTest {
+
+    private ObjectMapper objectMapper;
+
+    @BeforeEach
+    void prepare() {
+        objectMapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
+    @Test
+    @DisplayName("Deserialize - ISO Local Date Times")
+    void shouldTestIsoLocalDateTimes() throws Exception {
+
+        assertEquals(LocalDateTime.of(2021, 3, 4, 10, 30), read("2021-03-04T10:30").getAppointmentTime());
+        assertEquals(LocalDateTime.of(2021, 3, 4, 10, 30), read("2021-03-04T10:30:00").getAppointmentTime());
+        assertEquals(LocalDateTime.of(2021, 3, 4, 10, 30, 15, 500_000_000), read("2021-03-04T10:30:15.5").getAppointmentTime());
+        assertEquals(LocalDateTime.of(2021, 3, 4, 10, 30, 0, 1), read("2021-03-04T10:30:00.000000001").getAppointmentTime());
+    }
+
+    @Test
+    @DisplayName("Deserialize - Other Forms Fall Back To The Standard Deserializer")
+    void shouldTestFallback() throws Exception {
+
+        ScheduleAppointmentRequest request = objectMapper.readValue(
+                "{\"appointmentTime\":[2021,3,4,10,30],\"userId\":\"hireMePlz\",\"extra\":{\"a\":[1]}}", ScheduleAppointmentRequest.class);
+
+        assertEquals(LocalDateTime.of(2021, 3, 4, 10, 30), request.getAppointmentTime());
+        assertEquals("hireMePlz", request.getUserId());
+
+        assertThrows(JsonMappingException.class, () -> read("2021-02-30T10:30"));
+        assertThrows(JsonMappingException.class, () -> read("tomorrow at ten"));
+    }
+
+    @Test
+    @DisplayName("Deserialize - Missing And Null Fields")
+    void shouldTestMissingFields() throws Exception {
+
+        ScheduleAppointmentRequest request = objectMapper.readValue("{\"appointmentTime\":null}", ScheduleAppointmentRequest.class);
+
+        assertNull(request.getAppointmentTime());
+        assertNull(request.getUserId());
+        assertNull(objectMapper.readValue("{}", ScheduleAppointmentRequest.class).getUserId());
+    }
+
+    private ScheduleAppointmentRequest read(String appointmentTime) throws Exception {
+
+        return objectMapper.readValue("{\"userId\":\"hireMePlz\",\"appointmentTime\":\"" + appointmentTime + "\"}",
+                ScheduleAppointmentRequest.class);
+    }
+}
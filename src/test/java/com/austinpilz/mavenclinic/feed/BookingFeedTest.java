@@ -0,0 +1,183 @@
+package com.austinpilz.mavenclinic.feed;
+
+import com.austinpilz.mavenclinic.core.AppointmentSlot;
+import com.austinpilz.mavenclinic.core.ScheduleAppointmentRequest;
+import com.austinpilz.mavenclinic.exception.TooManySubscribersException;
+import com.austinpilz.mavenclinic.manager.AppointmentCommitListener;
+import com.austinpilz.mavenclinic.manager.AppointmentStore;
+import com.austinpilz.mavenclinic.manager.UserAppointmentManager;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BookingFeedTest {
+
+    private FeedProperties properties;
+    private BookingFeed feed;
+
+    @BeforeEach
+    void prepare() {
+        properties = new FeedProperties();
+        properties.setEnabled(true);
+        properties.setCapacity(8);
+        properties.setMaxSubscribers(1);
+        feed = new BookingFeed(properties, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void close() {
+        feed.close();
+    }
+
+    @Test
+    @DisplayName("Booking Event Log - Reads In Sequence And Reports Being Lapped")
+    void shouldTestEventLog() {
+
+        BookingEventLog events = new BookingEventLog(4, 100);
+        BookingEventLog.Entry[] read = new BookingEventLog.Entry[3];
+
+        assertEquals(100, events.getOldestSequence());
+        assertEquals(0, events.read(100, read));
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(100 + i, events.append("user" + i, 18_000 + i, 20));
+        }
+
+        assertEquals(3, events.read(100, read));
+        assertEquals("user0", read[0].getUserId());
+        assertEquals(102, read[2].getSequence());
+        assertEquals(18_002, read[2].getEpochDay());
+
+        // Lap the start of the log, the first bookings are gone and the rest can still be read.
+        for (int i = 3; i < 6; i++) {
+            events.append("user" + i, 18_000 + i, 20);
+        }
+
+        assertEquals(BookingEventLog.LAPPED, events.read(100, read));
+        assertEquals(102, events.getOldestSequence());
+        assertEquals(3, events.read(102, read));
+        assertEquals(1, events.read(105, read));
+        assertEquals(0, events.read(106, read));
+    }
+
+    @Test
+    @DisplayName("Booking Event Log - Concurrent Appends Keep Every Sequence")
+    void shouldTestConcurrentAppends() throws Exception {
+
+        BookingEventLog events = new BookingEventLog(1 << 14, 0);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int thread = 0; thread < 4; thread++) {
+            int id = thread;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 2_000; i++) {
+                    events.append("user" + id, i, 0);
+                }
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        BookingEventLog.Entry[] read = new BookingEventLog.Entry[8_000];
+        assertEquals(8_000, events.read(0, read));
+
+        // Each writer's bookings come out in the order it appended them.
+        int[] next = new int[4];
+        for (int i = 0; i < read.length; i++) {
+            assertEquals(i, read[i].getSequence());
+
+            int writer = read[i].getUserId().charAt(4) - '0';
+            assertEquals(next[writer]++, read[i].getEpochDay());
+        }
+    }
+
+    @Test
+    @DisplayName("Booking Feed - Publishes New Bookings Only")
+    void shouldTestPublishedBookings() {
+
+        AppointmentStore store = new AppointmentStore(feed);
+        long start = feed.getNextSequence();
+        int today = (int) LocalDate.now().toEpochDay();
+
+        UserAppointmentManager manager = store.getOrCreate("hireMePlz");
+        assertTrue(manager.scheduleAppointment(request(today + 1)).isAppointmentAccepted());
+        assertFalse(manager.scheduleAppointment(request(today + 1)).isAppointmentAccepted());
+        assertEquals(start + 1, feed.getNextSequence());
+
+        // Restored and imported bookings were published when they were first booked.
+        manager.restoreAppointment(today + 2, 20);
+        assertTrue(manager.importAppointment(today + 3, 20));
+        assertEquals(start + 1, feed.getNextSequence());
+        assertEquals(3, store.getAppointmentCount());
+    }
+
+    @Test
+    @DisplayName("Booking Feed - Batches Are Published Once Committed")
+    void shouldTestBatchPublishing() {
+
+        // A journal whose group commit fails once.
+        boolean[] failCommit = {true};
+        AppointmentCommitListener journal = new AppointmentCommitListener() {
+
+            @Override
+            public void onAppointmentCommitted(String userId, int epochDay, int slot) {
+            }
+
+            @Override
+            public void onBatchCommitted() {
+                if (failCommit[0]) {
+                    failCommit[0] = false;
+                    throw new IllegalStateException("Disk full.");
+                }
+            }
+        };
+
+        AppointmentStore store = new AppointmentStore(AppointmentCommitListener.of(Arrays.asList(journal, feed)));
+        long start = feed.getNextSequence();
+        int today = (int) LocalDate.now().toEpochDay();
+
+        store.startBatch();
+        store.getOrCreate("first").scheduleAppointment(request(today + 1));
+        assertThrows(IllegalStateException.class, store::commitBatch);
+        assertEquals(start, feed.getNextSequence());
+
+        store.startBatch();
+        store.getOrCreate("second").scheduleAppointment(request(today + 1));
+        store.getOrCreate("third").scheduleAppointment(request(today + 1));
+        assertEquals(start, feed.getNextSequence());
+        store.commitBatch();
+        assertEquals(start + 2, feed.getNextSequence());
+    }
+
+    @Test
+    @DisplayName("Booking Feed - Subscribers Are Capped")
+    void shouldTestSubscriberCap() {
+
+        assertNotNull(feed.subscribe(null));
+        assertThrows(TooManySubscribersException.class, () -> feed.subscribe(0L));
+    }
+
+    private static ScheduleAppointmentRequest request(int epochDay) {
+
+        return ScheduleAppointmentRequest.builder()
+                .userId("hireMePlz")
+                .appointmentTime(AppointmentSlot.startOf(epochDay, 21))
+                .build();
+    }
+}
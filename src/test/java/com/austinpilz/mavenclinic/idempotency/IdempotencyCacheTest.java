@@ -0,0 +1,116 @@
+package com.austinpilz.mavenclinic.idempotency;
+
+import com.austinpilz.mavenclinic.core.ScheduleAppointmentRequest;
+import com.austinpilz.mavenclinic.core.ScheduleAppointmentResponse;
+import com.austinpilz.mavenclinic.exception.IdempotencyKeyReusedException;
+import com.austinpilz.mavenclinic.exception.InvalidIdempotencyKeyException;
+import com.austinpilz.mavenclinic.service.AppointmentService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdempotencyCacheTest {
+
+    private SimpleMeterRegistry registry;
+    private IdempotencyProperties properties;
+    private AppointmentService service;
+    private AtomicInteger runs;
+
+    @BeforeEach
+    void prepare() {
+        registry = new SimpleMeterRegistry();
+        properties = new IdempotencyProperties();
+        service = new AppointmentService();
+        runs = new AtomicInteger();
+    }
+
+    @Test
+    @DisplayName("Execute - Retry Returns The Original Outcome")
+    void shouldTestReplay() {
+
+        IdempotencyCache cache = new IdempotencyCache(properties, registry);
+        ScheduleAppointmentRequest request = request(10);
+
+        IdempotencyCache.Result first = execute(cache, "key-1", request);
+        IdempotencyCache.Result retry = execute(cache, "key-1", request);
+
+        assertTrue(first.getResponse().isAppointmentAccepted());
+        assertFalse(first.isReplayed());
+        assertTrue(retry.getResponse().isAppointmentAccepted());
+        assertTrue(retry.isReplayed());
+        assertEquals(1, runs.get());
+
+        // Without the key, the same request is a duplicate day.
+        assertFalse(service.scheduleAppointment(request).isAppointmentAccepted());
+
+        assertEquals(1, cache.size());
+        assertEquals(0.5, cache.getHitRatio());
+        assertEquals(1.0, registry.get("maven.idempotency.requests").tag("result", "hit").counter().count());
+        assertEquals(1.0, registry.get("maven.idempotency.cache.size").gauge().value());
+    }
+
+    @Test
+    @DisplayName("Execute - Key Reused For Another Appointment Or Malformed")
+    void shouldTestKeyMisuse() {
+
+        IdempotencyCache cache = new IdempotencyCache(properties, registry);
+        execute(cache, "key-1", request(10));
+
+        assertThrows(IdempotencyKeyReusedException.class, () -> execute(cache, "key-1", request(11)));
+        assertThrows(InvalidIdempotencyKeyException.class, () -> execute(cache, "", request(10)));
+        assertThrows(InvalidIdempotencyKeyException.class, () -> execute(cache, "k".repeat(256), request(10)));
+
+        // The same key for another user is a different key.
+        IdempotencyCache.Result other = cache.execute("key-1", ScheduleAppointmentRequest.builder()
+                .userId("anotherUser")
+                .appointmentTime(LocalDate.now().plusDays(1).atTime(11, 0))
+                .build(), () -> ScheduleAppointmentResponse.ACCEPTED);
+        assertFalse(other.isReplayed());
+    }
+
+    @Test
+    @DisplayName("Execute - Bounded By TTL And Size, Failures Not Remembered")
+    void shouldTestEviction() {
+
+        properties.setTtl(Duration.ZERO);
+        IdempotencyCache expiring = new IdempotencyCache(properties, registry);
+        execute(expiring, "key-1", request(10));
+        assertFalse(execute(expiring, "key-1", request(10)).isReplayed());
+
+        properties.setTtl(Duration.ofHours(1));
+        properties.setMaxEntries(3);
+        IdempotencyCache bounded = new IdempotencyCache(properties, new SimpleMeterRegistry());
+        for (int i = 0; i < 10; i++) {
+            execute(bounded, "key-" + i, request(i));
+        }
+        assertEquals(3, bounded.size());
+
+        assertThrows(IllegalStateException.class, () -> bounded.execute("failing", request(20), () -> {
+            throw new IllegalStateException();
+        }));
+        assertFalse(bounded.execute("failing", request(20), () -> ScheduleAppointmentResponse.ACCEPTED).isReplayed());
+    }
+
+    private IdempotencyCache.Result execute(IdempotencyCache cache, String key, ScheduleAppointmentRequest request) {
+
+        return cache.execute(key, request, () -> {
+            runs.incrementAndGet();
+            return service.scheduleAppointment(request);
+        });
+    }
+
+    private static ScheduleAppointmentRequest request(int daysAhead) {
+
+        return ScheduleAppointmentRequest.builder()
+                .userId("hireMePlz")
+                .appointmentTime(LocalDate.now().plusDays(daysAhead).atTime(10, 0))
+                .build();
+    }
+}
@@ -0,0 +1,118 @@
+package com.austinpilz.mavenclinic.manager;
+
+import com.austinpilz.mavenclinic.core.ScheduleAppointmentRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AppointmentStoreTest {
+
+    private static final long HOUR = TimeUnit.HOURS.toNanos(1);
+
+    private AppointmentStore store;
+
+    @BeforeEach
+    void prepare() {
+        store = new AppointmentStore();
+    }
+
+    @Test
+    @DisplayName("Find - Unknown User Leaves Nothing Behind")
+    void shouldTestFindUnknownUser() {
+
+        assertNull(store.find("noSuchUser"));
+        assertEquals(0, store.getUserCount());
+
+        store.getOrCreate("hireMePlz");
+
+        assertNotNull(store.find("hireMePlz"));
+        assertEquals(1, store.getUserCount());
+    }
+
+    @Test
+    @DisplayName("Evict Idle - Only Users Idle Past Their Timeout Are Frozen")
+    void shouldTestEvictIdle() {
+
+        int today = (int) LocalDate.now().toEpochDay();
+        store.getOrCreate("upcoming").restoreAppointment(today + 1, 20);
+        store.getOrCreate("past").restoreAppointment(today - 1, 20);
+
+        // Nobody has been idle for an hour.
+        assertEquals(0, store.evictIdle(HOUR, HOUR, Integer.MAX_VALUE));
+
+        // Only the user with just past appointments is held to the zero timeout.
+        assertEquals(1, store.evictIdle(HOUR, 0, Integer.MAX_VALUE));
+        assertTrue(store.find("past").isFrozen());
+        assertFalse(store.find("upcoming").isFrozen());
+        assertEquals(1, store.getFrozenUserCount());
+
+        assertEquals(1, store.evictIdle(0, 0, Integer.MAX_VALUE));
+        assertEquals(2, store.getFrozenUserCount());
+    }
+
+    @Test
+    @DisplayName("Evict Idle - Least Recently Used Are Frozen Beyond The Cap")
+    void shouldTestEvictOverCap() throws Exception {
+
+        int tomorrow = (int) LocalDate.now().plusDays(1).toEpochDay();
+        for (int user = 0; user < 10; user++) {
+            store.getOrCreate("user" + user).restoreAppointment(tomorrow, 20);
+            Thread.sleep(1); // Keeps the last access times apart.
+        }
+
+        assertEquals(7, store.evictIdle(HOUR, HOUR, 3));
+
+        for (int user = 0; user < 10; user++) {
+            assertEquals(user < 7, store.find("user" + user).isFrozen(), "user" + user);
+        }
+    }
+
+    @Test
+    @DisplayName("Evict Idle - Frozen User Thaws On Use")
+    void shouldTestThawOnUse() {
+
+        LocalDate tomorrow = LocalDate.now().plusDays(1);
+        UserAppointmentManager manager = store.getOrCreate("hireMePlz");
+        manager.restoreAppointment((int) tomorrow.toEpochDay(), 20);
+        store.evictIdle(0, 0, Integer.MAX_VALUE);
+
+        // Exporting decodes the user without thawing them.
+        assertEquals(1, manager.exportAppointments(Long.MIN_VALUE, Long.MAX_VALUE).size());
+        assertTrue(manager.isFrozen());
+
+        // Booking does, and still sees the frozen appointment.
+        assertFalse(manager.scheduleAppointment(ScheduleAppointmentRequest.builder()
+                .userId("hireMePlz")
+                .appointmentTime(tomorrow.atTime(15, 0))
+                .build()).isAppointmentAccepted());
+        assertFalse(manager.isFrozen());
+        assertEquals(1, manager.getAllAppointments().size());
+    }
+
+    @Test
+    @DisplayName("Remove - Hands The Schedule Over And Forgets The User")
+    void shouldTestRemove() {
+
+        int today = (int) LocalDate.now().toEpochDay();
+        store.getOrCreate("movingAway").restoreAppointment(today, 20);
+        store.getOrCreate("movingAway").restoreAppointment(today + 3, 21);
+
+        int[] handedOver = new int[1];
+        store.remove("movingAway", (userId, epochDays, slots, count) -> handedOver[0] = count);
+
+        assertEquals(2, handedOver[0]);
+        assertNull(store.find("movingAway"));
+        assertEquals(0, store.getAppointmentCount());
+
+        // Importing it elsewhere counts as a commit, but never books the same day twice.
+        UserAppointmentManager manager = store.getOrCreate("movingIn");
+        assertTrue(manager.importAppointment(today, 20));
+        assertFalse(manager.importAppointment(today, 22));
+        assertEquals(1, store.getAppointmentCount());
+    }
+}
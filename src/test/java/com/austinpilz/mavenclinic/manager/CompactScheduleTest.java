@@ -0,0 +1,171 @@
+package com.austinpilz.mavenclinic.manager;
+
+import com.austinpilz.mavenclinic.core.MavenAppointment;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactScheduleTest {
+
+    private static final int USERS = 2_000;
+    private static final int APPOINTMENTS_PER_USER = 100;
+
+    @Test
+    @DisplayName("Insert - Sorted And One Per Day")
+    void shouldTestInsert() {
+
+        CompactSchedule schedule = new CompactSchedule();
+
+        assertTrue(schedule.insert(20, 3));
+        assertTrue(schedule.insert(10, 1));
+        assertTrue(schedule.insert(30, 47));
+        assertTrue(schedule.insert(15, 0));
+        assertFalse(schedule.insert(10, 5));
+
+        assertEquals(4, schedule.size());
+        assertEquals(10, schedule.epochDayAt(0));
+        assertEquals(1, schedule.slotAt(0));
+        assertEquals(15, schedule.epochDayAt(1));
+        assertEquals(20, schedule.epochDayAt(2));
+        assertEquals(30, schedule.epochDayAt(3));
+        assertEquals(47, schedule.slotAt(3));
+
+        assertTrue(schedule.contains(15));
+        assertFalse(schedule.contains(16));
+    }
+
+    @Test
+    @DisplayName("Next Free Day - Skips Whole Runs Of Booked Days")
+    void shouldTestNextFreeDay() {
+
+        CompactSchedule schedule = new CompactSchedule();
+
+        // Days 100 through 4099 booked back to back, then 4101 and 4102.
+        for (int day = 100; day < 4_100; day++) {
+            schedule.insert(day, 20);
+        }
+        schedule.insert(4_101, 20);
+        schedule.insert(4_102, 20);
+
+        assertEquals(99, schedule.nextFreeDay(99));
+        assertEquals(4_100, schedule.nextFreeDay(100));
+        assertEquals(4_100, schedule.nextFreeDay(2_500));
+        assertEquals(4_100, schedule.nextFreeDay(4_099));
+        assertEquals(4_103, schedule.nextFreeDay(4_101));
+        assertEquals(5_000, schedule.nextFreeDay(5_000));
+    }
+
+    @Test
+    @DisplayName("Freeze - Thawed Schedule Matches Original")
+    void shouldTestFreezeAndThaw() {
+
+        CompactSchedule schedule = new CompactSchedule();
+        int[] days = {-800_000, -1, 0, 1, 2, 19_000, 19_001, 19_400, 2_000_000_000};
+        for (int i = 0; i < days.length; i++) {
+            schedule.insert(days[i], i * 5);
+        }
+
+        schedule.freeze();
+
+        assertTrue(schedule.isFrozen());
+        assertEquals(days.length, schedule.size());
+
+        // Reading a frozen schedule leaves it frozen.
+        CompactSchedule readable = schedule.readable();
+        assertTrue(schedule.isFrozen());
+        assertFalse(readable.isFrozen());
+
+        schedule.thaw();
+
+        assertFalse(schedule.isFrozen());
+        for (int i = 0; i < days.length; i++) {
+            assertEquals(days[i], schedule.epochDayAt(i));
+            assertEquals(i * 5, schedule.slotAt(i));
+            assertEquals(days[i], readable.epochDayAt(i));
+            assertEquals(i * 5, readable.slotAt(i));
+        }
+
+        // Still accepts bookings once thawed.
+        assertTrue(schedule.insert(3, 7));
+        assertFalse(schedule.insert(19_000, 7));
+    }
+
+    @Test
+    @DisplayName("Freeze - Frozen Schedule Is Smaller")
+    void shouldTestFrozenFootprint() {
+
+        CompactSchedule schedule = new CompactSchedule();
+        int firstDay = (int) LocalDate.now().toEpochDay();
+        for (int day = 0; day < APPOINTMENTS_PER_USER; day++) {
+            schedule.insert(firstDay + day * 3, 21);
+        }
+
+        long activeBytes = schedule.estimatedBytes();
+        schedule.freeze();
+
+        assertTrue(schedule.estimatedBytes() * 2 < activeBytes,
+                "Frozen schedule is " + schedule.estimatedBytes() + " bytes versus " + activeBytes + " bytes active.");
+    }
+
+    @Test
+    @DisplayName("Heap Footprint - Compact Layout Versus Map Of Appointments")
+    void shouldTestHeapFootprint() {
+
+        LocalDate firstDay = LocalDate.now();
+
+        // The previous layout: a LocalDate keyed map of appointments per user, each holding its own user ID.
+        long before = usedHeap();
+        List<Map<LocalDate, MavenAppointment>> mapLayout = new ArrayList<>(USERS);
+        for (int user = 0; user < USERS; user++) {
+            Map<LocalDate, MavenAppointment> appointments = new HashMap<>();
+            for (int day = 0; day < APPOINTMENTS_PER_USER; day++) {
+                LocalDateTime start = firstDay.plusDays(day).atTime(10, 30);
+                appointments.put(start.toLocalDate(), MavenAppointment.builder()
+                        .userId(new String("user" + user))
+                        .start(start)
+                        .end(start.plusMinutes(30))
+                        .build());
+            }
+            mapLayout.add(appointments);
+        }
+        long mapBytes = usedHeap() - before;
+
+        // The compact layout.
+        before = usedHeap();
+        List<UserAppointmentManager> compactLayout = new ArrayList<>(USERS);
+        for (int user = 0; user < USERS; user++) {
+            UserAppointmentManager manager = new UserAppointmentManager("user" + user);
+            for (int day = 0; day < APPOINTMENTS_PER_USER; day++) {
+                manager.restoreAppointment((int) firstDay.plusDays(day).toEpochDay(), 21);
+            }
+            compactLayout.add(manager);
+        }
+        long compactBytes = usedHeap() - before;
+
+        // Keep both layouts reachable until both have been measured.
+        assertEquals(USERS, mapLayout.size());
+        assertEquals(USERS, compactLayout.size());
+
+        assertTrue(compactBytes * 5 < mapBytes,
+                "Compact layout used " + compactBytes + " bytes versus " + mapBytes + " bytes for the map layout.");
+    }
+
+    private static long usedHeap() {
+
+        Runtime runtime = Runtime.getRuntime();
+
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
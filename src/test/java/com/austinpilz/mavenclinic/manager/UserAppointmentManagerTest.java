@@ -1,13 +1,19 @@
 package com.austinpilz.mavenclinic.manager;
 
+import com.austinpilz.mavenclinic.core.AppointmentSlot;
+import com.austinpilz.mavenclinic.core.AvailableSlot;
 import com.austinpilz.mavenclinic.core.MavenAppointment;
 import com.austinpilz.mavenclinic.core.ScheduleAppointmentRequest;
 import com.austinpilz.mavenclinic.core.ScheduleAppointmentResponse;
+import com.austinpilz.mavenclinic.exception.NotShardOwnerException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -75,6 +81,30 @@ class UserAppointmentManagerTest {
         assertNotNull(response.getStatusMessage());
     }
 
+    @Test
+    @DisplayName("Schedule Appointment - Day Out Of Range")
+    void shouldTestScheduleAppointmentOutOfRange() {
+
+        LocalDateTime farFuture = LocalDateTime.of(10_000_000, 1, 1, 10, 0);
+        LocalDateTime farPast = LocalDateTime.of(-10_000_000, 1, 1, 10, 0);
+
+        // Neither day fits in an int, so neither is cut down onto some other day.
+        assertFalse(AppointmentSlot.isInRange(farFuture));
+        assertFalse(AppointmentSlot.isInRange(farPast));
+        assertThrows(ArithmeticException.class, () -> AppointmentSlot.epochDayOf(farFuture));
+        assertTrue(AppointmentSlot.isInRange(LocalDate.ofEpochDay(Integer.MAX_VALUE).atTime(10, 0)));
+
+        for (LocalDateTime time : new LocalDateTime[]{farFuture, farPast}) {
+            ScheduleAppointmentResponse response = manager.scheduleAppointment(ScheduleAppointmentRequest.builder()
+                    .appointmentTime(time)
+                    .userId("hireMePlz")
+                    .build());
+
+            assertSame(ScheduleAppointmentResponse.INVALID_TIME, response);
+        }
+        assertTrue(manager.getAllAppointments().isEmpty());
+    }
+
     @Test
     @DisplayName("Appointment Already Scheduled")
     void shouldTestIsAppointmentAlreadyScheduled() {
@@ -102,4 +132,147 @@ class UserAppointmentManagerTest {
         assertFalse(manager.isAppointmentTimeValid(LocalDate.now().atStartOfDay().plusMinutes(31)));
         assertFalse(manager.isAppointmentTimeValid(LocalDate.now().atStartOfDay().plusMinutes(59)));
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Get Appointments - Date Range And Limit")
+    void shouldTestGetAppointmentsInRange() {
+
+        long today = LocalDate.now().toEpochDay();
+
+        // Book out of order to make sure the results come back in date order.
+        for (int day : new int[]{5, 1, 3, 2, 4}) {
+            manager.restoreAppointment((int) today + day, 20);
+        }
+
+        List<MavenAppointment> appointments = manager.getAppointments(today + 2, today + 4, 10);
+        assertEquals(3, appointments.size());
+        assertEquals(LocalDate.now().plusDays(2), appointments.get(0).getStart().toLocalDate());
+        assertEquals(LocalDate.now().plusDays(4), appointments.get(2).getStart().toLocalDate());
+
+        assertEquals(2, manager.getAppointments(Long.MIN_VALUE, Long.MAX_VALUE, 2).size());
+        assertTrue(manager.getAppointments(today + 6, Long.MAX_VALUE, 10).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Get Next Appointment")
+    void shouldTestGetNextAppointment() {
+
+        manager.restoreAppointment((int) LocalDate.now().toEpochDay(), 20); // 10:00 today.
+        manager.restoreAppointment((int) LocalDate.now().plusDays(3).toEpochDay(), 20);
+
+        assertEquals(LocalDate.now().atTime(10, 0), manager.getNextAppointment(LocalDate.now().atTime(9, 0)).getStart());
+        assertEquals(LocalDate.now().atTime(10, 0), manager.getNextAppointment(LocalDate.now().atTime(10, 0)).getStart());
+        assertEquals(LocalDate.now().plusDays(3).atTime(10, 0), manager.getNextAppointment(LocalDate.now().atTime(10, 1)).getStart());
+        assertNull(manager.getNextAppointment(LocalDate.now().plusDays(3).atTime(10, 1)));
+    }
+
+    @Test
+    @DisplayName("Get Version - Bumped Only By Commits")
+    void shouldTestGetVersion() {
+
+        LocalDate tomorrow = LocalDate.now().plusDays(1);
+        assertEquals(0, manager.getVersion());
+
+        manager.scheduleAppointment(ScheduleAppointmentRequest.builder()
+                .appointmentTime(tomorrow.atTime(9, 0))
+                .userId("hireMePlz")
+                .build());
+        assertEquals(1, manager.getVersion());
+
+        // Rejected bookings and reads leave the version alone.
+        manager.scheduleAppointment(ScheduleAppointmentRequest.builder()
+                .appointmentTime(tomorrow.atTime(10, 0))
+                .userId("hireMePlz")
+                .build());
+        manager.getAllAppointments();
+        assertEquals(1, manager.getVersion());
+
+        // Freezing and thawing keeps it.
+        manager.freezeIfIdle(Long.MAX_VALUE, Long.MAX_VALUE, 0);
+        assertEquals(1, manager.getVersion());
+    }
+
+    @Test
+    @DisplayName("Schedule Appointment - Rejections Are Shared")
+    void shouldTestSharedRejections() {
+
+        LocalDate tomorrow = LocalDate.now().plusDays(1);
+        manager.addAppointment(MavenAppointment.builder().start(tomorrow.atTime(9, 0)).build());
+
+        ScheduleAppointmentResponse first = manager.scheduleAppointment(ScheduleAppointmentRequest.builder()
+                .appointmentTime(tomorrow.atTime(10, 0))
+                .userId("hireMePlz")
+                .build());
+        ScheduleAppointmentResponse second = manager.scheduleAppointment(ScheduleAppointmentRequest.builder()
+                .appointmentTime(tomorrow.atTime(11, 0))
+                .userId("hireMePlz")
+                .build());
+
+        assertSame(first, second);
+        assertEquals("User already has existing appointment on " + tomorrow, first.getStatusMessage());
+
+        assertSame(ScheduleAppointmentResponse.INVALID_TIME, manager.scheduleAppointment(ScheduleAppointmentRequest.builder()
+                .appointmentTime(tomorrow.plusDays(1).atTime(11, 1))
+                .userId("hireMePlz")
+                .build()));
+    }
+
+    @Test
+    @DisplayName("Schedule Appointments - Group Stops Where The User Moves Away")
+    void shouldTestGroupStopsWhenRefused() {
+
+        // A cluster guard that lets one booking through before the user moves to another node.
+        int[] allowed = {1};
+        UserAppointmentManager guarded = new AppointmentStore(new AppointmentCommitListener() {
+
+            @Override
+            public void onAppointmentCommitted(String userId, int epochDay, int slot) {
+                if (allowed[0]-- <= 0) {
+                    throw new NotShardOwnerException();
+                }
+            }
+        }).getOrCreate("hireMePlz");
+
+        LocalDate tomorrow = LocalDate.now().plusDays(1);
+        List<ScheduleAppointmentResponse> responses = guarded.scheduleAppointments(Arrays.asList(
+                ScheduleAppointmentRequest.builder().appointmentTime(tomorrow.atTime(9, 0)).userId("hireMePlz").build(),
+                ScheduleAppointmentRequest.builder().appointmentTime(tomorrow.atTime(10, 0)).userId("hireMePlz").build(),
+                ScheduleAppointmentRequest.builder().appointmentTime(tomorrow.plusDays(1).atTime(9, 0)).userId("hireMePlz").build(),
+                ScheduleAppointmentRequest.builder().appointmentTime(tomorrow.plusDays(2).atTime(9, 0)).userId("hireMePlz").build()));
+
+        // The booking and the rejection before the refusal are kept, the rest are left for the new owner.
+        assertEquals(2, responses.size());
+        assertTrue(responses.get(0).isAppointmentAccepted());
+        assertFalse(responses.get(1).isAppointmentAccepted());
+        assertEquals(1, guarded.getAllAppointments().size());
+    }
+
+    @Test
+    @DisplayName("Available Slots - Booked Days Are Skipped")
+    void shouldTestGetAvailableSlots() {
+
+        LocalDate today = LocalDate.now();
+
+        // Tomorrow and the day after are booked.
+        for (int day = 1; day <= 2; day++) {
+            manager.scheduleAppointment(ScheduleAppointmentRequest.builder()
+                    .appointmentTime(today.plusDays(day).atTime(9, 0))
+                    .userId("hireMePlz")
+                    .build());
+        }
+
+        // The rest of today from 23:00, rounded up from 22:40, then straight on to the first free day.
+        List<AvailableSlot> slots = manager.getAvailableSlots(today.atTime(22, 40), 4);
+
+        assertEquals(4, slots.size());
+        assertEquals(today.atTime(23, 0), slots.get(0).getStart());
+        assertEquals(today.atTime(23, 30), slots.get(1).getStart());
+        assertEquals(today.plusDays(3).atStartOfDay(), slots.get(2).getStart());
+        assertEquals(today.plusDays(3).atTime(0, 30), slots.get(3).getStart());
+        assertEquals(today.plusDays(3).atTime(1, 0), slots.get(3).getEnd());
+
+        // A time on a slot start is included, and a user without appointments has every slot free.
+        assertEquals(today.plusDays(1).atTime(9, 0),
+                UserAppointmentManager.getAvailableSlotsWithoutAppointments(today.plusDays(1).atTime(9, 0), 1).get(0).getStart());
+    }
+}
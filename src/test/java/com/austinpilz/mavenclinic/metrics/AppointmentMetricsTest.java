@@ -0,0 +1,53 @@
+package com.austinpilz.mavenclinic.metrics;
+
+import com.austinpilz.mavenclinic.core.ScheduleOutcome;
+import com.austinpilz.mavenclinic.manager.AppointmentStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AppointmentMetricsTest {
+
+    private SimpleMeterRegistry registry;
+    private AppointmentStore store;
+    private AppointmentMetrics metrics;
+
+    @BeforeEach
+    void prepare() {
+        registry = new SimpleMeterRegistry();
+        store = new AppointmentStore();
+        metrics = new AppointmentMetrics(registry, store);
+    }
+
+    @Test
+    @DisplayName("Record Schedule - Timed And Counted By Outcome")
+    void shouldTestRecordSchedule() {
+
+        metrics.recordSchedule(ScheduleOutcome.ACCEPTED, 1_000);
+        metrics.recordSchedule(ScheduleOutcome.DUPLICATE_DAY, 1_000);
+        metrics.recordSchedule(ScheduleOutcome.DUPLICATE_DAY, 1_000);
+
+        assertEquals(3, registry.get("maven.appointments.schedule").timer().count());
+        assertEquals(1.0, registry.get("maven.appointments.schedule.outcome").tag("outcome", "accepted").counter().count());
+        assertEquals(2.0, registry.get("maven.appointments.schedule.outcome").tag("outcome", "duplicate-day").counter().count());
+        assertEquals(0.0, registry.get("maven.appointments.schedule.outcome").tag("outcome", "invalid-time").counter().count());
+    }
+
+    @Test
+    @DisplayName("Store Gauges")
+    void shouldTestStoreGauges() {
+
+        store.getOrCreate("hireMePlz").restoreAppointment((int) LocalDate.now().toEpochDay(), 20);
+        store.getOrCreate("hireMePlz").restoreAppointment((int) LocalDate.now().plusDays(1).toEpochDay(), 20);
+        store.getOrCreate("anotherUser").restoreAppointment((int) LocalDate.now().toEpochDay(), 20);
+
+        assertEquals(2.0, registry.get("maven.appointments.store.users").gauge().value());
+        assertEquals(3.0, registry.get("maven.appointments.store.appointments").gauge().value());
+        assertTrue(registry.get("maven.appointments.store.memory").gauge().value() > 0);
+    }
+}
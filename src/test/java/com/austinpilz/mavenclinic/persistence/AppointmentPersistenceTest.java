@@ -0,0 +1,205 @@
+package com.austinpilz.mavenclinic.persistence;
+
+import com.austinpilz.mavenclinic.core.AppointmentSlot;
+import com.austinpilz.mavenclinic.core.ScheduleAppointmentRequest;
+import com.austinpilz.mavenclinic.manager.AppointmentStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AppointmentPersistenceTest {
+
+    private Path directory;
+    private PersistenceProperties properties;
+
+    @BeforeEach
+    void prepare() throws IOException {
+        directory = Files.createTempDirectory("appointments");
+
+        properties = new PersistenceProperties();
+        properties.setEnabled(true);
+        properties.setDirectory(directory.toString());
+        properties.setFsyncPolicy(FsyncPolicy.NEVER);
+        properties.setSnapshotInterval(Duration.ofHours(1));
+    }
+
+    @AfterEach
+    void cleanup() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Restart - Journal Replayed")
+    void shouldTestRestartReplaysJournal() {
+
+        AppointmentPersistence persistence = new AppointmentPersistence(properties);
+        AppointmentStore store = attach(persistence);
+        book(store, "hireMePlz", 0);
+        book(store, "hireMePlz", 1);
+        book(store, "anotherUser", 0);
+
+        // Simulate a crash: the journal is left behind without a final snapshot.
+        AppointmentStore restored = attach(new AppointmentPersistence(properties));
+
+        assertEquals(2, restored.getOrCreate("hireMePlz").getAllAppointments().size());
+        assertEquals(1, restored.getOrCreate("anotherUser").getAllAppointments().size());
+    }
+
+    @Test
+    @DisplayName("Restart - Snapshot Plus Journal Tail")
+    void shouldTestRestartLoadsSnapshotAndTail() throws IOException {
+
+        AppointmentPersistence persistence = new AppointmentPersistence(properties);
+        AppointmentStore store = attach(persistence);
+        book(store, "hireMePlz", 0);
+        book(store, "hireMePlz", 1);
+
+        persistence.snapshot();
+        book(store, "hireMePlz", 2);
+
+        // Only the snapshot and the segment written after it should remain.
+        assertEquals(1, countFiles(AppointmentSnapshot.SNAPSHOT_PREFIX));
+        assertEquals(1, countFiles(AppointmentJournal.SEGMENT_PREFIX));
+
+        AppointmentStore restored = attach(new AppointmentPersistence(properties));
+
+        assertEquals(3, restored.getOrCreate("hireMePlz").getAllAppointments().size());
+    }
+
+    @Test
+    @DisplayName("Snapshot - Long User IDs Fit")
+    void shouldTestSnapshotOfLongUserId() throws IOException {
+
+        // 11,000 emoji take 44,000 bytes of UTF-8, which the journal takes and modified UTF-8 could not hold.
+        String userId = String.join("", Collections.nCopies(11_000, "\uD83D\uDE00"));
+
+        AppointmentPersistence persistence = new AppointmentPersistence(properties);
+        AppointmentStore store = attach(persistence);
+        book(store, userId, 0);
+
+        persistence.snapshot();
+        assertEquals(1, countFiles(AppointmentSnapshot.SNAPSHOT_PREFIX));
+        assertEquals(1, countFiles(AppointmentJournal.SEGMENT_PREFIX));
+
+        AppointmentStore restored = attach(new AppointmentPersistence(properties));
+
+        assertEquals(1, restored.find(userId).getAllAppointments().size());
+    }
+
+    @Test
+    @DisplayName("Restart - Group Committed Batch Replayed")
+    void shouldTestRestartReplaysBatch() {
+
+        properties.setFsyncPolicy(FsyncPolicy.ALWAYS);
+        AppointmentStore store = attach(new AppointmentPersistence(properties));
+
+        store.startBatch();
+        book(store, "hireMePlz", 0);
+        book(store, "anotherUser", 0);
+        store.commitBatch();
+        book(store, "hireMePlz", 1);
+
+        AppointmentStore restored = attach(new AppointmentPersistence(properties));
+
+        assertEquals(2, restored.getOrCreate("hireMePlz").getAllAppointments().size());
+        assertEquals(1, restored.getOrCreate("anotherUser").getAllAppointments().size());
+    }
+
+    @Test
+    @DisplayName("Restart - Handed Off Users Stay Gone")
+    void shouldTestRestartForgetsHandedOffUsers() {
+
+        AppointmentStore store = attach(new AppointmentPersistence(properties));
+        book(store, "hireMePlz", 0);
+        book(store, "hireMePlz", 1);
+        book(store, "anotherUser", 0);
+
+        store.remove("hireMePlz", (userId, epochDays, slots, count) -> assertEquals(2, count));
+
+        AppointmentStore restored = attach(new AppointmentPersistence(properties));
+
+        assertEquals(1, restored.getUserCount());
+        assertEquals(1, restored.getAppointmentCount());
+        assertEquals(1, restored.getOrCreate("anotherUser").getAllAppointments().size());
+    }
+
+    @Test
+    @DisplayName("Restart - Rolled Back Appointments Stay Gone")
+    void shouldTestRestartForgetsRolledBackAppointments() {
+
+        AppointmentStore store = attach(new AppointmentPersistence(properties));
+        book(store, "hireMePlz", 0);
+        book(store, "hireMePlz", 1);
+
+        // The second booking was in a batch that failed to commit.
+        int epochDay = (int) LocalDate.now().plusDays(1).toEpochDay();
+        store.rollbackAppointment(store.find("hireMePlz"), epochDay, AppointmentSlot.slotOf(LocalDate.now().atTime(10, 30)));
+
+        AppointmentStore restored = attach(new AppointmentPersistence(properties));
+
+        assertEquals(1, restored.getAppointmentCount());
+        assertEquals(LocalDate.now(), restored.find("hireMePlz").getAllAppointments().get(0).getStart().toLocalDate());
+    }
+
+    @Test
+    @DisplayName("Restart - Torn Journal Tail Dropped")
+    void shouldTestRestartDropsTornTail() throws IOException {
+
+        AppointmentPersistence persistence = new AppointmentPersistence(properties);
+        AppointmentStore store = attach(persistence);
+        book(store, "hireMePlz", 0);
+        book(store, "hireMePlz", 1);
+
+        // Simulate a crash part way through writing the next record.
+        Path segment = AppointmentJournal.segmentPath(directory, 0);
+        Files.write(segment, new byte[]{0, 0, 0, 12, 1, 2}, StandardOpenOption.APPEND);
+
+        AppointmentStore restored = attach(new AppointmentPersistence(properties));
+
+        assertEquals(2, restored.getOrCreate("hireMePlz").getAllAppointments().size());
+    }
+
+    private AppointmentStore attach(AppointmentPersistence persistence) {
+
+        AppointmentStore store = new AppointmentStore(persistence);
+        persistence.attach(store);
+
+        return store;
+    }
+
+    private void book(AppointmentStore store, String userId, int daysFromNow) {
+
+        assertTrue(store.getOrCreate(userId).scheduleAppointment(ScheduleAppointmentRequest.builder()
+                .userId(userId)
+                .appointmentTime(LocalDate.now().plusDays(daysFromNow).atTime(10, 30))
+                .build()).isAppointmentAccepted());
+    }
+
+    private long countFiles(String prefix) throws IOException {
+
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> matching = files.filter(file -> file.getFileName().toString().startsWith(prefix))
+                    .collect(Collectors.toList());
+            return matching.size();
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package com.austinpilz.mavenclinic.pipeline;
+
+import com.austinpilz.mavenclinic.core.ScheduleAppointmentRequest;
+import com.austinpilz.mavenclinic.core.ScheduleAppointmentResponse;
+import com.austinpilz.mavenclinic.core.ScheduleOutcome;
+import com.austinpilz.mavenclinic.manager.AppointmentCommitListener;
+import com.austinpilz.mavenclinic.manager.AppointmentStore;
+import com.austinpilz.mavenclinic.persistence.AppointmentPersistence;
+import com.austinpilz.mavenclinic.persistence.FsyncPolicy;
+import com.austinpilz.mavenclinic.persistence.PersistenceProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.support.GenericApplicationContext;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommitPipelineTest {
+
+    private PipelineProperties properties;
+    private CommitPipeline pipeline;
+
+    @BeforeEach
+    void prepare() {
+        properties = new PipelineProperties();
+        properties.setEnabled(true);
+        properties.setShards(2);
+        properties.setBufferSize(8);
+        properties.setMaxBatchSize(4);
+    }
+
+    @AfterEach
+    void close() {
+        if (pipeline != null) {
+            pipeline.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Ring Buffer - Drains In Order And Refuses When Full")
+    void shouldTestRingBuffer() {
+
+        RingBuffer<Integer> ring = new RingBuffer<>(4);
+        Integer[] drained = new Integer[3];
+
+        assertTrue(ring.isEmpty());
+        assertEquals(0, ring.drain(drained));
+
+        // Go round the ring a few times, filling it up on every lap.
+        int next = 0;
+        int expected = 0;
+        for (int lap = 0; lap < 5; lap++) {
+            while (ring.offer(next)) {
+                next++;
+            }
+            assertEquals(expected + 4, next);
+
+            while (!ring.isEmpty()) {
+                int count = ring.drain(drained);
+                for (int i = 0; i < count; i++) {
+                    assertEquals(expected++, (int) drained[i]);
+                }
+            }
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> new RingBuffer<>(6));
+    }
+
+    @Test
+    @DisplayName("Submit - Bookings Of A User Are Applied In Order")
+    void shouldTestOrderPerUser() {
+
+        AppointmentStore store = new AppointmentStore();
+        pipeline = attach(store);
+
+        // More bookings than the ring buffer holds, so the request thread has to wait for room as well.
+        List<CompletableFuture<ScheduleAppointmentResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(pipeline.submit(request("hireMePlz", i / 2)));
+        }
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i % 2 == 0 ? ScheduleOutcome.ACCEPTED : ScheduleOutcome.DUPLICATE_DAY,
+                    futures.get(i).join().getOutcome());
+        }
+        assertEquals(50, store.find("hireMePlz").getAllAppointments().size());
+    }
+
+    @Test
+    @DisplayName("Submit - Concurrent Bookings Accept Each Day Once")
+    void shouldTestConcurrentBookings() throws Exception {
+
+        AppointmentStore store = new AppointmentStore();
+        pipeline = attach(store);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<ScheduleAppointmentResponse>> responses = new ArrayList<>();
+        try {
+            for (int thread = 0; thread < 8; thread++) {
+                for (int user = 0; user < 10; user++) {
+                    for (int day = 0; day < 20; day++) {
+                        ScheduleAppointmentRequest request = request("user" + user, day);
+                        responses.add(executor.submit(() -> pipeline.scheduleAppointment(request)));
+                    }
+                }
+            }
+
+            int accepted = 0;
+            for (Future<ScheduleAppointmentResponse> response : responses) {
+                accepted += response.get().isAppointmentAccepted() ? 1 : 0;
+            }
+
+            // Eight threads asked for every day of every user, each day went to exactly one of them.
+            assertEquals(10 * 20, accepted);
+            assertEquals(10 * 20, store.getAppointmentCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("Commit Batch - Bookings Are Acknowledged After The Batch Commits")
+    void shouldTestGroupCommit() {
+
+        AtomicInteger uncommitted = new AtomicInteger();
+        AtomicInteger removed = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger(1);
+        AppointmentStore store = new AppointmentStore(new AppointmentCommitListener() {
+
+            @Override
+            public void onAppointmentCommitted(String userId, int epochDay, int slot) {
+
+                uncommitted.incrementAndGet();
+            }
+
+            @Override
+            public void onAppointmentRemoved(String userId, int epochDay, int slot) {
+
+                removed.incrementAndGet();
+            }
+
+            @Override
+            public void onBatchCommitted() {
+
+                uncommitted.set(0);
+
+                if (failures.getAndDecrement() > 0) {
+                    throw new IllegalStateException("Disk full.");
+                }
+            }
+        });
+        pipeline = attach(store);
+
+        // The first batch fails to commit, so its accepted booking is failed too and rolled back out of the store.
+        RuntimeException error = assertThrows(IllegalStateException.class,
+                () -> pipeline.scheduleAppointment(request("hireMePlz", 0)));
+        assertEquals("Disk full.", error.getMessage());
+        assertEquals(1, removed.get());
+        assertEquals(0, store.getAppointmentCount());
+        assertTrue(store.find("hireMePlz").getAllAppointments().isEmpty());
+
+        // Retrying the failed booking books the day.
+        assertEquals(ScheduleOutcome.ACCEPTED, pipeline.scheduleAppointment(request("hireMePlz", 0)).getOutcome());
+        assertEquals(0, uncommitted.get());
+        assertEquals(1, store.getAppointmentCount());
+    }
+
+    @Test
+    @DisplayName("Close - Every Booking Handed Over Is Completed")
+    void shouldTestClose() throws Exception {
+
+        AppointmentStore store = new AppointmentStore();
+        pipeline = attach(store);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<List<CompletableFuture<ScheduleAppointmentResponse>>>> submitters = new ArrayList<>();
+        try {
+            for (int thread = 0; thread < 4; thread++) {
+                String userId = "user" + thread;
+                submitters.add(executor.submit(() -> {
+                    List<CompletableFuture<ScheduleAppointmentResponse>> futures = new ArrayList<>();
+                    try {
+                        for (int day = 0; ; day++) {
+                            futures.add(pipeline.submit(request(userId, day)));
+                        }
+                    } catch (IllegalStateException e) {
+                        // The pipeline closed.
+                    }
+                    return futures;
+                }));
+            }
+
+            Thread.sleep(20);
+            pipeline.close();
+
+            // Bookings submitted right up until the close are all applied, none are left waiting.
+            int accepted = 0;
+            for (Future<List<CompletableFuture<ScheduleAppointmentResponse>>> submitter : submitters) {
+                for (CompletableFuture<ScheduleAppointmentResponse> future : submitter.get()) {
+                    accepted += future.get(1, TimeUnit.SECONDS).isAppointmentAccepted() ? 1 : 0;
+                }
+            }
+            assertEquals(store.getAppointmentCount(), accepted);
+
+            assertThrows(IllegalStateException.class, () -> pipeline.submit(request("hireMePlz", 0)));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("Close - Drains Before Persistence Closes")
+    void shouldTestShutdownOrder() throws Exception {
+
+        Path directory = Files.createTempDirectory("appointments");
+        PersistenceProperties persistenceProperties = new PersistenceProperties();
+        persistenceProperties.setEnabled(true);
+        persistenceProperties.setDirectory(directory.toString());
+        persistenceProperties.setFsyncPolicy(FsyncPolicy.NEVER);
+
+        // Registered before persistence, so it would be destroyed after it if nothing stopped it sooner.
+        GenericApplicationContext context = new GenericApplicationContext();
+        context.registerBean(CommitPipeline.class, () -> new CommitPipeline(properties, new SimpleMeterRegistry()));
+        context.registerBean(AppointmentPersistence.class, () -> new AppointmentPersistence(persistenceProperties));
+        context.refresh();
+
+        AppointmentPersistence persistence = context.getBean(AppointmentPersistence.class);
+        AppointmentStore store = new AppointmentStore(persistence);
+        persistence.attach(store);
+        pipeline = context.getBean(CommitPipeline.class);
+        pipeline.attach(store);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        AtomicInteger submitted = new AtomicInteger();
+        AtomicInteger accepted = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        try {
+            Future<?> submitter = executor.submit(() -> {
+                try {
+                    for (int booking = 0; ; booking = submitted.incrementAndGet()) {
+                        pipeline.submit(request("user" + booking, 0)).whenComplete((response, error) ->
+                                (error == null && response.isAppointmentAccepted() ? accepted : failed).incrementAndGet());
+                    }
+                } catch (IllegalStateException e) {
+                    // The pipeline closed.
+                }
+            });
+
+            // Close while bookings are still being handed over.
+            while (submitted.get() < 1_000) {
+                Thread.sleep(1);
+            }
+            context.close();
+            submitter.get(10, TimeUnit.SECONDS);
+
+            // Every booking handed over was journaled, so the final snapshot restores them all.
+            assertEquals(0, failed.get());
+
+            AppointmentPersistence restarted = new AppointmentPersistence(persistenceProperties);
+            AppointmentStore restored = new AppointmentStore(restarted);
+            restarted.attach(restored);
+            restarted.close();
+
+            assertEquals(accepted.get(), restored.getAppointmentCount());
+        } finally {
+            executor.shutdownNow();
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private CommitPipeline attach(AppointmentStore store) {
+
+        CommitPipeline pipeline = new CommitPipeline(properties, new SimpleMeterRegistry());
+        pipeline.attach(store);
+
+        return pipeline;
+    }
+
+    private static ScheduleAppointmentRequest request(String userId, int day) {
+
+        return ScheduleAppointmentRequest.builder()
+                .userId(userId)
+                .appointmentTime(LocalDate.now().plusDays(day).atTime(10, 30))
+                .build();
+    }
+}
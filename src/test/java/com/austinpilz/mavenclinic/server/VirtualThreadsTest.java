@@ -0,0 +1,34 @@
+package com.austinpilz.mavenclinic.server;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VirtualThreadsTest {
+
+    @Test
+    @DisplayName("New Thread Per Task Executor - Only On Java 21+")
+    void shouldTestNewThreadPerTaskExecutor() throws Exception {
+
+        boolean supported = Runtime.version().feature() >= 21;
+        assertEquals(supported, VirtualThreads.isAvailable());
+
+        if (!supported) {
+            assertThrows(IllegalStateException.class, VirtualThreads::newThreadPerTaskExecutor);
+            return;
+        }
+
+        ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor();
+        try {
+            Future<Boolean> virtual = executor.submit(() -> (Boolean) Thread.class.getMethod("isVirtual").invoke(Thread.currentThread()));
+            assertTrue(virtual.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
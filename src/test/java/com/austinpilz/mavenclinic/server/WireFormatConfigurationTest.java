@@ -0,0 +1,100 @@
+package com.austinpilz.mavenclinic.server;
+
+import com.austinpilz.mavenclinic.core.AppointmentPage;
+import com.austinpilz.mavenclinic.core.MavenAppointment;
+import com.austinpilz.mavenclinic.core.ScheduleAppointmentRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WireFormatConfigurationTest {
+
+    private ObjectMapper smile;
+
+    @BeforeEach
+    void prepare() {
+        smile = WireFormatConfiguration.smileObjectMapper(new Jackson2ObjectMapperBuilder());
+    }
+
+    @Test
+    @DisplayName("Smile - Payloads Round Trip")
+    void shouldTestRoundTrip() throws IOException {
+
+        ScheduleAppointmentRequest request = ScheduleAppointmentRequest.builder()
+                .userId("hireMePlz")
+                .appointmentTime(LocalDateTime.of(2021, 5, 3, 10, 30))
+                .build();
+        assertEquals(request, smile.readValue(smile.writeValueAsBytes(request), ScheduleAppointmentRequest.class));
+
+        AppointmentPage page = AppointmentPage.builder()
+                .appointments(appointments(3))
+                .nextCursor(LocalDate.of(2021, 5, 5))
+                .build();
+        assertEquals(page, smile.readValue(smile.writeValueAsBytes(page), AppointmentPage.class));
+    }
+
+    @Test
+    @DisplayName("Smile - Times Are Epoch Numbers, ISO Strings Still Read")
+    void shouldTestEpochTimes() throws IOException {
+
+        LocalDateTime time = LocalDateTime.of(2021, 5, 3, 10, 30);
+
+        assertEquals(time.toEpochSecond(ZoneOffset.UTC), smile.readTree(smile.writeValueAsBytes(time)).longValue());
+        assertEquals(18_750, smile.readTree(smile.writeValueAsBytes(LocalDate.of(2021, 5, 3))).longValue());
+
+        // A client still sending the ISO string is read the same.
+        ObjectMapper plainSmile = new ObjectMapper(new SmileFactory());
+        byte[] isoRequest = plainSmile.writeValueAsBytes(new java.util.LinkedHashMap<String, String>() {{
+            put("userId", "hireMePlz");
+            put("appointmentTime", "2021-05-03T10:30:00");
+        }});
+        assertEquals(time, smile.readValue(isoRequest, ScheduleAppointmentRequest.class).getAppointmentTime());
+    }
+
+    @Test
+    @DisplayName("Smile - Appointment Lists Are A Fraction Of Their JSON")
+    void shouldTestPayloadSize() throws IOException {
+
+        ObjectMapper json = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        List<MavenAppointment> appointments = appointments(50);
+
+        byte[] smileBytes = smile.writeValueAsBytes(appointments);
+        byte[] jsonBytes = json.writeValueAsBytes(appointments);
+
+        // The user ID is written once and referred back to, the times are numbers.
+        assertTrue(smileBytes.length * 3 < jsonBytes.length, smileBytes.length + " bytes against " + jsonBytes.length);
+        assertEquals(appointments, Arrays.asList(smile.readValue(smileBytes, MavenAppointment[].class)));
+    }
+
+    private static List<MavenAppointment> appointments(int count) {
+
+        List<MavenAppointment> appointments = new ArrayList<>();
+        for (int day = 0; day < count; day++) {
+            LocalDateTime start = LocalDate.of(2021, 5, 3).plusDays(day).atTime(9, 0);
+            appointments.add(MavenAppointment.builder()
+                    .userId("hireMePlz")
+                    .start(start)
+                    .end(start.plusMinutes(30))
+                    .build());
+        }
+
+        return appointments;
+    }
+}
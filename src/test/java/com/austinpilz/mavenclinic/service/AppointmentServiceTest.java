@@ -0,0 +1,170 @@
+package com.austinpilz.mavenclinic.service;
+
+import com.austinpilz.mavenclinic.core.MavenAppointment;
+import com.austinpilz.mavenclinic.core.ScheduleAppointmentRequest;
+import com.austinpilz.mavenclinic.core.ScheduleAppointmentResponse;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AppointmentServiceTest {
+
+    private static final int USERS = 25;
+    private static final int DAYS = 20;
+    private static final int ATTEMPTS_PER_DAY = 10;
+    private static final int THREADS = 16;
+
+    private AppointmentService service;
+
+    @BeforeEach
+    void prepare() {
+        service = new AppointmentService();
+    }
+
+    @Test
+    @DisplayName("Schedule Appointment - Concurrent Bookings Neither Lost Nor Duplicated")
+    void shouldTestConcurrentScheduleAppointment() throws Exception {
+
+        LocalDate firstDay = LocalDate.now().plusDays(1);
+        AtomicIntegerArray acceptedPerUserDay = new AtomicIntegerArray(USERS * DAYS);
+        CountDownLatch startingGate = new CountDownLatch(1);
+
+        // Every user books every day several times, each attempt at a different valid half hour slot.
+        List<Callable<Void>> bookings = new ArrayList<>();
+        for (int attempt = 0; attempt < ATTEMPTS_PER_DAY; attempt++) {
+            for (int user = 0; user < USERS; user++) {
+                for (int day = 0; day < DAYS; day++) {
+                    int userDay = user * DAYS + day;
+                    LocalDateTime time = firstDay.plusDays(day).atStartOfDay().plusMinutes(30L * attempt);
+                    String userId = "user" + user;
+
+                    bookings.add(() -> {
+                        startingGate.await();
+
+                        ScheduleAppointmentResponse response = service.scheduleAppointment(ScheduleAppointmentRequest.builder()
+                                .appointmentTime(time)
+                                .userId(userId)
+                                .build());
+
+                        if (response.isAppointmentAccepted()) {
+                            acceptedPerUserDay.incrementAndGet(userDay);
+                        }
+                        return null;
+                    });
+                }
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (Callable<Void> booking : bookings) {
+                futures.add(executor.submit(booking));
+            }
+
+            // Release every booking at once to maximize contention.
+            startingGate.countDown();
+
+            for (Future<Void> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Exactly one booking per user per day must have been accepted.
+        for (int userDay = 0; userDay < USERS * DAYS; userDay++) {
+            assertEquals(1, acceptedPerUserDay.get(userDay));
+        }
+
+        // Every accepted booking must be present in the store, once.
+        for (int user = 0; user < USERS; user++) {
+            List<MavenAppointment> appointments = service.getUserAppointments("user" + user);
+            assertEquals(DAYS, appointments.size());
+
+            Set<LocalDate> days = new HashSet<>();
+            for (MavenAppointment appointment : appointments) {
+                assertEquals("user" + user, appointment.getUserId());
+                assertTrue(days.add(appointment.getStart().toLocalDate()));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Schedule Appointments - Batch Outcomes In Request Order")
+    void shouldTestScheduleAppointmentsBatch() {
+
+        LocalDate tomorrow = LocalDate.now().plusDays(1);
+
+        List<ScheduleAppointmentRequest> requests = new ArrayList<>();
+        requests.add(ScheduleAppointmentRequest.builder().userId("hireMePlz").appointmentTime(tomorrow.atTime(9, 0)).build());
+        requests.add(ScheduleAppointmentRequest.builder().userId("anotherUser").appointmentTime(tomorrow.atTime(9, 0)).build());
+        requests.add(ScheduleAppointmentRequest.builder().userId("hireMePlz").appointmentTime(tomorrow.atTime(10, 0)).build()); // Same day.
+        requests.add(ScheduleAppointmentRequest.builder().userId("anotherUser").appointmentTime(tomorrow.plusDays(1).atTime(9, 7)).build()); // Invalid time.
+        requests.add(ScheduleAppointmentRequest.builder().userId("hireMePlz").build()); // Missing time.
+        requests.add(ScheduleAppointmentRequest.builder().userId("hireMePlz").appointmentTime(tomorrow.plusDays(1).atTime(9, 30)).build());
+        requests.add(ScheduleAppointmentRequest.builder().userId(StringUtils.repeat('x', ScheduleAppointmentRequest.MAX_USER_ID_LENGTH + 1))
+                .appointmentTime(tomorrow.atTime(9, 0)).build()); // User ID too long.
+
+        List<ScheduleAppointmentResponse> responses = service.scheduleAppointments(requests);
+
+        assertEquals(requests.size(), responses.size());
+        assertTrue(responses.get(0).isAppointmentAccepted());
+        assertTrue(responses.get(1).isAppointmentAccepted());
+        assertFalse(responses.get(2).isAppointmentAccepted());
+        assertFalse(responses.get(3).isAppointmentAccepted());
+        assertFalse(responses.get(4).isAppointmentAccepted());
+        assertNotNull(responses.get(4).getStatusMessage());
+        assertTrue(responses.get(5).isAppointmentAccepted());
+        assertSame(ScheduleAppointmentResponse.INVALID_REQUEST, responses.get(6));
+
+        assertEquals(2, service.getUserAppointments("hireMePlz").size());
+        assertEquals(1, service.getUserAppointments("anotherUser").size());
+    }
+
+    @Test
+    @DisplayName("For Each Appointments - Every User Visited Within Date Range")
+    void shouldTestForEachAppointments() {
+
+        LocalDate tomorrow = LocalDate.now().plusDays(1);
+
+        for (int user = 0; user < 10; user++) {
+            for (int day = 0; day < 5; day++) {
+                service.scheduleAppointment(ScheduleAppointmentRequest.builder()
+                        .userId("user" + user)
+                        .appointmentTime(tomorrow.plusDays(day).atTime(9, 0))
+                        .build());
+            }
+        }
+
+        List<MavenAppointment> exported = new ArrayList<>();
+        service.forEachAppointments(tomorrow.plusDays(1), tomorrow.plusDays(2), exported::addAll);
+
+        assertEquals(20, exported.size());
+        for (MavenAppointment appointment : exported) {
+            assertFalse(appointment.getStart().toLocalDate().isBefore(tomorrow.plusDays(1)));
+            assertFalse(appointment.getStart().toLocalDate().isAfter(tomorrow.plusDays(2)));
+        }
+
+        List<MavenAppointment> everything = new ArrayList<>();
+        service.forEachAppointments(null, null, everything::addAll);
+        assertEquals(50, everything.size());
+    }
+}
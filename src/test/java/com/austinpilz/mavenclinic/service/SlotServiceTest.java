@@ -0,0 +1,80 @@
+package com.austinpilz.mavenclinic.service;
+
+import com.austinpilz.mavenclinic.core.ClinicAppointmentPage;
+import com.austinpilz.mavenclinic.core.ScheduleAppointmentRequest;
+import com.austinpilz.mavenclinic.core.SlotCount;
+import com.austinpilz.mavenclinic.index.AppointmentSlotIndex;
+import com.austinpilz.mavenclinic.manager.AppointmentStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlotServiceTest {
+
+    private final LocalDate tomorrow = LocalDate.now().plusDays(1);
+
+    private AppointmentStore store;
+    private SlotService slotService;
+
+    @BeforeEach
+    void prepare() {
+        AppointmentSlotIndex slotIndex = new AppointmentSlotIndex();
+        store = new AppointmentStore(slotIndex);
+        slotService = new SlotService(slotIndex);
+    }
+
+    @Test
+    @DisplayName("Get Appointments - Window Paged In Start Time Order")
+    void shouldTestGetAppointments() {
+
+        book("carol", tomorrow.atTime(11, 0));
+        book("alice", tomorrow.atTime(9, 0));
+        book("bob", tomorrow.atTime(9, 0));
+        book("dave", tomorrow.atTime(13, 0)); // Outside the window.
+        book("alice", tomorrow.atTime(12, 0)); // Rejected, alice already has an appointment that day.
+
+        ClinicAppointmentPage first = slotService.getAppointments(tomorrow.atTime(9, 0), tomorrow.atTime(13, 0), null, 2);
+        assertEquals(3, first.getTotalCount());
+        assertEquals(2, first.getAppointments().size());
+        assertEquals("alice", first.getAppointments().get(0).getUserId());
+        assertEquals("bob", first.getAppointments().get(1).getUserId());
+        assertNotNull(first.getNextCursor());
+
+        ClinicAppointmentPage second = slotService.getAppointments(tomorrow.atTime(9, 0), tomorrow.atTime(13, 0), first.getNextCursor(), 2);
+        assertEquals(1, second.getAppointments().size());
+        assertEquals("carol", second.getAppointments().get(0).getUserId());
+        assertEquals(tomorrow.atTime(11, 0), second.getAppointments().get(0).getStart());
+        assertNull(second.getNextCursor());
+    }
+
+    @Test
+    @DisplayName("Get Slot Counts")
+    void shouldTestGetSlotCounts() {
+
+        book("alice", tomorrow.atTime(9, 0));
+        book("bob", tomorrow.atTime(9, 0));
+        book("carol", tomorrow.atTime(9, 30));
+        book("dave", tomorrow.plusDays(1).atTime(9, 0));
+
+        List<SlotCount> counts = slotService.getSlotCounts(tomorrow);
+
+        assertEquals(2, counts.size());
+        assertEquals(tomorrow.atTime(9, 0), counts.get(0).getStart());
+        assertEquals(2, counts.get(0).getCount());
+        assertEquals(1, counts.get(1).getCount());
+    }
+
+    private void book(String userId, LocalDateTime time) {
+
+        store.getOrCreate(userId).scheduleAppointment(ScheduleAppointmentRequest.builder()
+                .userId(userId)
+                .appointmentTime(time)
+                .build());
+    }
+}